@@ -0,0 +1,140 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rental.CarAllocation;
+import rental.CarRentalCompany;
+import rental.CarType;
+import rental.Quote;
+import rental.ReservationException;
+
+/**
+ * Books a year of random short and long rentals, in random order, into an
+ * empty fleet with each of the allocation strategies. Demand exceeds the
+ * capacity of the fleet, so the strategies differ in how many requests, and
+ * in particular how many long ones, still find a car.
+ *
+ * The score is the time per booking request. The counters hold the accepted
+ * and rejected requests, summed over the iterations, and every iteration
+ * prints its acceptance rates:
+ *   java -jar target/benchmarks.jar AllocationSimulation
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(AllocationSimulation.REQUESTS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocationSimulation {
+
+    static final int REQUESTS = 20000;
+
+    private static final int HORIZON_DAYS = 365;
+
+    // one in LONG_EVERY requests is a long rental
+    private static final int LONG_EVERY = 5;
+
+    @Param({"RANDOM", "FIRST_FIT", "BEST_FIT"})
+    public CarAllocation strategy;
+
+    // about 120% of the rental days asked for fit into a year of this fleet
+    @Param({"200"})
+    public int fleetSize;
+
+    CarRentalCompany company;
+    Quote[] requests = new Quote[REQUESTS];
+
+    @Setup(Level.Trial)
+    public void prepareRequests() {
+        Random random = new Random(11);
+        for (int i = 0; i < REQUESTS; i++) {
+            CarType type = Fleet.TYPES.get(random.nextInt(Fleet.TYPES.size()));
+            int days = isLong(i) ? 7 + random.nextInt(15) : 1 + random.nextInt(3);
+            int start = Fleet.FIRST_DAY + random.nextInt(HORIZON_DAYS - days);
+            // unique renters, since equal quotes are equal reservations
+            requests[i] = new Quote(Fleet.renter(i), start, start + days, Fleet.COMPANY, type.getName(),
+                    CarRentalCompany.calculateRentalPrice(type, start, start + days));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyFleet() {
+        company = Fleet.build(fleetSize, 0, 42);
+        company.setAllocationStrategy(strategy);
+    }
+
+    @Benchmark
+    public void book(Acceptance acceptance) {
+        for (int i = 0; i < REQUESTS; i++) {
+            boolean accepted;
+            try {
+                company.confirmQuote(requests[i]);
+                accepted = true;
+            } catch (ReservationException e) {
+                accepted = false;
+            }
+            acceptance.count(isLong(i), accepted);
+        }
+    }
+
+    private static boolean isLong(int request) {
+        return request % LONG_EVERY == 0;
+    }
+
+    /**
+     * Booking outcomes, reported next to the score.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Acceptance {
+
+        public long accepted;
+        public long rejected;
+        public long longAccepted;
+        public long longRejected;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            accepted = 0;
+            rejected = 0;
+            longAccepted = 0;
+            longRejected = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void print() {
+            System.out.printf("%nacceptance: %.1f%% of all requests, %.1f%% of long ones%n",
+                    percentage(accepted, rejected), percentage(longAccepted, longRejected));
+        }
+
+        void count(boolean isLong, boolean wasAccepted) {
+            if (wasAccepted) {
+                accepted++;
+                longAccepted += isLong ? 1 : 0;
+            } else {
+                rejected++;
+                longRejected += isLong ? 1 : 0;
+            }
+        }
+
+        private static double percentage(long yes, long no) {
+            return yes + no == 0 ? 0 : 100.0 * yes / (yes + no);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import rental.Car;
+import rental.CarRentalCompany;
+import rental.CarType;
+import rental.EpochDays;
+import rental.Quote;
+import rental.Reservation;
+
+/**
+ * Synthetic rental company for the benchmarks: a fleet spread over the car
+ * types of hertz.csv, with a fixed number of non-overlapping reservations per
+ * car in the reserved period that starts at FIRST_DAY.
+ */
+public class Fleet {
+
+    public static final String COMPANY = "Bench";
+    public static final String REGION = "Brussels";
+    public static final int RENTERS = 1000;
+    public static final int FIRST_DAY = EpochDays.of(new GregorianCalendar(2020, Calendar.JANUARY, 1).getTime());
+
+    // every reservation lies within a slot of this many days
+    public static final int SLOT_DAYS = 10;
+
+    // CarRentalCompany logs every call at INFO; keep a reference so the level sticks
+    private static final Logger rentalLogger = Logger.getLogger(CarRentalCompany.class.getName());
+
+    static {
+        rentalLogger.setLevel(Level.WARNING);
+    }
+
+    public static final List<CarType> TYPES = Arrays.asList(
+            new CarType("Compact", 4, 200, 44, true),
+            new CarType("Economy", 4, 150, 30, true),
+            new CarType("Mini", 2, 100, 25, true),
+            new CarType("Standard", 5, 400, 60, false),
+            new CarType("Premium", 5, 600, 100, false),
+            new CarType("Special", 5, 750, 1200, false),
+            new CarType("MPV", 7, 2000, 200, true));
+
+    private Fleet() {}
+
+    public static CarRentalCompany build(int fleetSize, int reservationsPerCar, long seed) {
+        Random random = new Random(seed);
+        List<Car> cars = new ArrayList<Car>(fleetSize);
+        for (int i = 0; i < fleetSize; i++) {
+            CarType type = TYPES.get(i % TYPES.size());
+            Car car = new Car(i, type);
+            for (int slot = 0; slot < reservationsPerCar; slot++) {
+                int start = FIRST_DAY + slot * SLOT_DAYS + random.nextInt(SLOT_DAYS / 2);
+                int end = start + 1 + random.nextInt(SLOT_DAYS / 2 - 1);
+                Quote quote = new Quote(renter(random.nextInt(RENTERS)), start, end, COMPANY, type.getName(),
+                        CarRentalCompany.calculateRentalPrice(type, start, end));
+                car.addReservation(new Reservation(quote, car.getId()));
+            }
+            cars.add(car);
+        }
+        return new CarRentalCompany(COMPANY, Arrays.asList(REGION, "Antwerp"), cars);
+    }
+
+    /**
+     * First day after all reservations made by {@link #build}.
+     */
+    public static int endOfReservations(int reservationsPerCar) {
+        return FIRST_DAY + reservationsPerCar * SLOT_DAYS;
+    }
+
+    public static String renter(int i) {
+        return "renter" + i;
+    }
+}
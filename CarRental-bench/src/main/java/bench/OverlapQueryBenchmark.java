@@ -0,0 +1,245 @@
+package bench;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rental.Car;
+import rental.CarRentalCompany;
+import rental.CarType;
+import rental.Reservation;
+
+/**
+ * The available car types query (getAvailableCarTypesInCompanies) on an
+ * embedded in-memory Derby database holding the fleet of {@link Fleet}, by
+ * default 10k cars with 100k reservations.
+ *
+ * The tables and indexes have the names and columns that schema generation
+ * gives the entities, and the SQL is the one EclipseLink generates for the
+ * named query. The NOT_IN_BETWEEN predicate is the one the query had before:
+ * the requested bounds BETWEEN the reservation bounds, inside NOT IN. It also
+ * misses reservations lying within the requested period, so it is only here
+ * for its cost, which grows with cars times reservations:
+ *   java -jar target/benchmarks.jar OverlapQueryBenchmark
+ *   java -jar target/benchmarks.jar OverlapQueryBenchmark -bm ss -p predicate=NOT_EXISTS,NOT_IN_BETWEEN -p fleetSize=500,1000,2000
+ * Setup prints the plan Derby chose for the query, with the index it uses
+ * for the reservations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OverlapQueryBenchmark {
+
+    private static final int REQUESTS = 256;
+
+    private static final String SELECT_TYPES
+            = "SELECT DISTINCT t0.ID, t0.NAME, t0.NBOFSEATS, t0.RENTALPRICEPERDAY, t0.SMOKINGALLOWED, t0.TRUNKSPACE "
+            + "FROM CARTYPE t0, CAR t1, CARRENTALCOMPANY t2 "
+            + "WHERE t2.NAME IN (?) AND t1.COMPANY_NAME = t2.NAME AND t0.ID = t1.TYPE_ID AND ";
+
+    public enum Predicate {
+        NOT_EXISTS("NOT EXISTS (SELECT t3.RESERVATIONID FROM RESERVATION t3 "
+                + "WHERE t3.CARID = t1.ID AND t3.STARTDAY <= ? AND t3.ENDDAY >= ?)", true),
+        NOT_IN_BETWEEN("t1.ID NOT IN (SELECT t3.CARID FROM RESERVATION t3 "
+                + "WHERE (? BETWEEN t3.STARTDAY AND t3.ENDDAY) OR (? BETWEEN t3.STARTDAY AND t3.ENDDAY))", false);
+
+        final String sql;
+        // whether the first parameter is the end of the period
+        final boolean endFirst;
+
+        Predicate(String sql, boolean endFirst) {
+            this.sql = sql;
+            this.endFirst = endFirst;
+        }
+    }
+
+    // NOT_IN_BETWEEN scans all reservations for every car, so compare it on small fleets only
+    @Param({"NOT_EXISTS"})
+    public Predicate predicate;
+
+    // whether RESERVATION_CAR_PERIOD of orm.xml exists
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    @Param({"10000"})
+    public int fleetSize;
+
+    @Param({"10"})
+    public int reservationsPerCar;
+
+    Connection connection;
+    PreparedStatement query;
+    int[] startDays = new int[REQUESTS];
+    int[] endDays = new int[REQUESTS];
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:derby:memory:overlap;create=true");
+        createSchema();
+        load(Fleet.build(fleetSize, reservationsPerCar, 42));
+
+        Random random = new Random(7);
+        int days = Math.max(1, Fleet.endOfReservations(reservationsPerCar) - Fleet.FIRST_DAY);
+        for (int i = 0; i < REQUESTS; i++) {
+            startDays[i] = Fleet.FIRST_DAY + random.nextInt(days);
+            endDays[i] = startDays[i] + 1 + random.nextInt(4);
+        }
+        query = connection.prepareStatement(SELECT_TYPES + predicate.sql);
+        printPlan();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+        try {
+            DriverManager.getConnection("jdbc:derby:memory:overlap;drop=true");
+        } catch (SQLException dropped) {
+            // Derby reports a dropped database with an exception
+        }
+    }
+
+    @Benchmark
+    public int availableCarTypes() throws SQLException {
+        int i = next++ & (REQUESTS - 1);
+        return run(startDays[i], endDays[i]);
+    }
+
+    private int run(int startDay, int endDay) throws SQLException {
+        query.setString(1, Fleet.COMPANY);
+        query.setInt(2, predicate.endFirst ? endDay : startDay);
+        query.setInt(3, predicate.endFirst ? startDay : endDay);
+        int types = 0;
+        ResultSet rows = query.executeQuery();
+        try {
+            while (rows.next()) {
+                types++;
+            }
+        } finally {
+            rows.close();
+        }
+        return types;
+    }
+
+    private void createSchema() throws SQLException {
+        Statement ddl = connection.createStatement();
+        try {
+            ddl.execute("CREATE TABLE CARRENTALCOMPANY (NAME VARCHAR(255) NOT NULL PRIMARY KEY)");
+            ddl.execute("CREATE TABLE CARTYPE (ID INTEGER NOT NULL PRIMARY KEY, NAME VARCHAR(255), NBOFSEATS INTEGER, "
+                    + "RENTALPRICEPERDAY FLOAT, SMOKINGALLOWED SMALLINT, TRUNKSPACE FLOAT)");
+            ddl.execute("CREATE TABLE CAR (ID INTEGER NOT NULL PRIMARY KEY, VERSION INTEGER, "
+                    + "COMPANY_NAME VARCHAR(255), TYPE_ID INTEGER)");
+            ddl.execute("CREATE INDEX CAR_COMPANY_TYPE ON CAR (COMPANY_NAME, TYPE_ID)");
+            ddl.execute("CREATE TABLE RESERVATION (RESERVATIONID INTEGER NOT NULL PRIMARY KEY, CARID INTEGER, "
+                    + "STARTDAY INTEGER, ENDDAY INTEGER, CARRENTER VARCHAR(255), RENTALCOMPANY VARCHAR(255), "
+                    + "CARTYPE VARCHAR(255), RENTALPRICE FLOAT)");
+            if (indexed) {
+                ddl.execute("CREATE INDEX RESERVATION_CAR_PERIOD ON RESERVATION (CARID, STARTDAY, ENDDAY)");
+            }
+        } finally {
+            ddl.close();
+        }
+    }
+
+    private void load(CarRentalCompany company) throws SQLException {
+        connection.setAutoCommit(false);
+        PreparedStatement insert = connection.prepareStatement("INSERT INTO CARRENTALCOMPANY VALUES (?)");
+        insert.setString(1, company.getName());
+        insert.executeUpdate();
+        insert.close();
+
+        insert = connection.prepareStatement("INSERT INTO CARTYPE VALUES (?, ?, ?, ?, ?, ?)");
+        for (int t = 0; t < Fleet.TYPES.size(); t++) {
+            CarType type = Fleet.TYPES.get(t);
+            insert.setInt(1, t);
+            insert.setString(2, type.getName());
+            insert.setInt(3, type.getNbOfSeats());
+            insert.setDouble(4, type.getRentalPricePerDay());
+            insert.setBoolean(5, type.isSmokingAllowed());
+            insert.setFloat(6, type.getTrunkSpace());
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        insert.close();
+
+        PreparedStatement cars = connection.prepareStatement("INSERT INTO CAR VALUES (?, 1, ?, ?)");
+        PreparedStatement reservations = connection.prepareStatement(
+                "INSERT INTO RESERVATION VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        int reservationId = 0;
+        for (int id = 0; id < fleetSize; id++) {
+            Car car = company.getCar(id);
+            cars.setInt(1, id);
+            cars.setString(2, company.getName());
+            cars.setInt(3, Fleet.TYPES.indexOf(car.getType()));
+            cars.addBatch();
+            for (Reservation res : car.getReservations()) {
+                reservations.setInt(1, reservationId++);
+                reservations.setInt(2, id);
+                reservations.setInt(3, res.getStartDay());
+                reservations.setInt(4, res.getEndDay());
+                reservations.setString(5, res.getCarRenter());
+                reservations.setString(6, res.getRentalCompany());
+                reservations.setString(7, res.getCarType());
+                reservations.setDouble(8, res.getRentalPrice());
+                reservations.addBatch();
+            }
+            if (id % 1000 == 999) {
+                cars.executeBatch();
+                reservations.executeBatch();
+            }
+        }
+        cars.executeBatch();
+        reservations.executeBatch();
+        cars.close();
+        reservations.close();
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        // the optimizer estimates from the statistics, which Derby only keeps for indexes
+        CallableStatement statistics = connection.prepareCall("CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS('APP', ?, NULL)");
+        for (String table : new String[]{"CAR", "RESERVATION"}) {
+            statistics.setString(1, table);
+            statistics.execute();
+        }
+        statistics.close();
+        System.out.printf("%nloaded %d cars and %d reservations%n", fleetSize, reservationId);
+    }
+
+    private void printPlan() throws SQLException {
+        Statement call = connection.createStatement();
+        try {
+            call.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+            long started = System.nanoTime();
+            int types = run(startDays[0], endDays[0]);
+            System.out.printf("first run: %d car types in %.1f ms%n", types, (System.nanoTime() - started) / 1e6);
+            ResultSet plan = call.executeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()");
+            plan.next();
+            System.out.println(plan.getString(1));
+            plan.close();
+            call.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)");
+        } finally {
+            call.close();
+        }
+    }
+}
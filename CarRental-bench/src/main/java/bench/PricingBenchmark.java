@@ -0,0 +1,63 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rental.CarType;
+import rental.FlatPricing;
+import rental.PricingStrategy;
+import rental.SeasonalPricing;
+
+/**
+ * Cost of pricing a rental of one to three weeks with flat and with seasonal
+ * rates, once the rate tables are built.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricingBenchmark {
+
+    private static final int REQUESTS = 1024;
+
+    PricingStrategy flat = new FlatPricing();
+    PricingStrategy seasonal = new SeasonalPricing();
+    CarType[] types = new CarType[REQUESTS];
+    int[] startDays = new int[REQUESTS];
+    int[] endDays = new int[REQUESTS];
+    int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(3);
+        for (int i = 0; i < REQUESTS; i++) {
+            types[i] = Fleet.TYPES.get(random.nextInt(Fleet.TYPES.size()));
+            startDays[i] = Fleet.FIRST_DAY + random.nextInt(3 * 365);
+            endDays[i] = startDays[i] + 7 + random.nextInt(15);
+            seasonal.calculatePrice(types[i], startDays[i], endDays[i]);
+        }
+    }
+
+    @Benchmark
+    public double flat() {
+        int i = next++ & (REQUESTS - 1);
+        return flat.calculatePrice(types[i], startDays[i], endDays[i]);
+    }
+
+    @Benchmark
+    public double seasonal() {
+        int i = next++ & (REQUESTS - 1);
+        return seasonal.calculatePrice(types[i], startDays[i], endDays[i]);
+    }
+}
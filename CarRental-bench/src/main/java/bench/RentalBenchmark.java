@@ -0,0 +1,209 @@
+package bench;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rental.Car;
+import rental.CarRentalCompany;
+import rental.CarType;
+import rental.EpochDays;
+import rental.Quote;
+import rental.Reservation;
+import rental.ReservationConstraints;
+import rental.ReservationException;
+
+/**
+ * Hot paths of the rental domain on a synthetic fleet.
+ *
+ * Run with, for example:
+ *   java -jar target/benchmarks.jar RentalBenchmark -prof gc -rf json -rff rental.json
+ * and change the reservation density with -p reservationsPerCar=...
+ * confirmQuote and cancelReservation change the fleet, so they are measured
+ * as single shots of BATCH operations each.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RentalBenchmark {
+
+    // number of prepared requests the benchmarks cycle through
+    private static final int REQUESTS = 1024;
+
+    // operations per measured batch of the benchmarks that change the fleet
+    private static final int BATCH = 1000;
+
+    @Param({"1000", "10000", "100000"})
+    public int fleetSize;
+
+    @Param({"10"})
+    public int reservationsPerCar;
+
+    CarRentalCompany company;
+    Car[] cars;
+    int[] startDays = new int[REQUESTS];
+    int[] endDays = new int[REQUESTS];
+    Date[] startDates = new Date[REQUESTS];
+    Date[] endDates = new Date[REQUESTS];
+    ReservationConstraints[] constraints = new ReservationConstraints[REQUESTS];
+    String[] renters = new String[REQUESTS];
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        company = Fleet.build(fleetSize, reservationsPerCar, 42);
+        cars = new Car[fleetSize];
+        for (int i = 0; i < fleetSize; i++) {
+            cars[i] = company.getCar(i);
+        }
+        Random random = new Random(7);
+        int days = Math.max(1, Fleet.endOfReservations(reservationsPerCar) - Fleet.FIRST_DAY);
+        for (int i = 0; i < REQUESTS; i++) {
+            startDays[i] = Fleet.FIRST_DAY + random.nextInt(days);
+            endDays[i] = startDays[i] + 1 + random.nextInt(4);
+            startDates[i] = EpochDays.toDate(startDays[i]);
+            endDates[i] = EpochDays.toDate(endDays[i]);
+            String type = Fleet.TYPES.get(random.nextInt(Fleet.TYPES.size())).getName();
+            constraints[i] = new ReservationConstraints(startDates[i], endDates[i], type, Fleet.REGION);
+            renters[i] = Fleet.renter(random.nextInt(Fleet.RENTERS));
+        }
+    }
+
+    private int nextRequest() {
+        return next = (next + 1) & (REQUESTS - 1);
+    }
+
+    @Benchmark
+    public boolean carIsAvailable() {
+        int i = nextRequest();
+        return cars[(i * 7919) % cars.length].isAvailable(startDays[i], endDays[i]);
+    }
+
+    @Benchmark
+    public Set<CarType> getAvailableCarTypes() {
+        int i = nextRequest();
+        return company.getAvailableCarTypes(startDates[i], endDates[i]);
+    }
+
+    @Benchmark
+    public Quote createQuote() {
+        int i = nextRequest();
+        try {
+            return company.createQuote(constraints[i], renters[i]);
+        } catch (ReservationException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Set<Reservation> getReservationsBy() {
+        return company.getReservationsBy(renters[nextRequest()]);
+    }
+
+    /**
+     * Books quotes in the period after the generated reservations; the
+     * bookings are cancelled again after every iteration.
+     */
+    @State(Scope.Thread)
+    public static class Bookings {
+
+        Quote[] quotes = new Quote[BATCH];
+        Reservation[] reservations = new Reservation[BATCH];
+        int next;
+
+        @Setup(Level.Iteration)
+        public void prepare(RentalBenchmark fleet) {
+            Random random = new Random(11);
+            int first = Fleet.endOfReservations(fleet.reservationsPerCar);
+            for (int i = 0; i < BATCH; i++) {
+                CarType type = Fleet.TYPES.get(random.nextInt(Fleet.TYPES.size()));
+                int start = first + random.nextInt(365);
+                int end = start + 1 + random.nextInt(4);
+                quotes[i] = new Quote(fleet.renters[i % REQUESTS], start, end, Fleet.COMPANY, type.getName(),
+                        CarRentalCompany.calculateRentalPrice(type, start, end));
+            }
+            next = 0;
+            prepared(fleet.company);
+        }
+
+        void prepared(CarRentalCompany company) {}
+
+        @TearDown(Level.Iteration)
+        public void cancel(RentalBenchmark fleet) {
+            cancelAll(fleet.company);
+        }
+
+        void confirmAll(CarRentalCompany company) {
+            for (int i = 0; i < BATCH; i++) {
+                try {
+                    reservations[i] = company.confirmQuote(quotes[i]);
+                } catch (ReservationException e) {
+                    reservations[i] = null;
+                }
+            }
+        }
+
+        void cancelAll(CarRentalCompany company) {
+            for (int i = 0; i < BATCH; i++) {
+                if (reservations[i] != null) {
+                    company.cancelReservation(reservations[i]);
+                    reservations[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Bookings that are already confirmed before every iteration.
+     */
+    @State(Scope.Thread)
+    public static class ConfirmedBookings extends Bookings {
+
+        @Override
+        void prepared(CarRentalCompany company) {
+            confirmAll(company);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    public Reservation confirmQuote(Bookings bookings) {
+        int i = bookings.next++;
+        try {
+            return bookings.reservations[i] = company.confirmQuote(bookings.quotes[i]);
+        } catch (ReservationException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    public void cancelReservation(ConfirmedBookings bookings) {
+        int i = bookings.next++;
+        Reservation res = bookings.reservations[i];
+        if (res != null) {
+            company.cancelReservation(res);
+            bookings.reservations[i] = null;
+        }
+    }
+}
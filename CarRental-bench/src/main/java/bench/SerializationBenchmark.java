@@ -0,0 +1,155 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rental.CarType;
+import rental.Quote;
+import rental.Reservation;
+
+/**
+ * Wire format of a remote response holding RESERVATIONS reservations, in ns
+ * per reservation: the compact Externalizable encoding of Reservation against
+ * default serialization of the same fields (DefaultReservation).
+ *
+ * The setup checks that the compact encoding round-trips and prints the
+ * bytes per reservation of both encodings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(SerializationBenchmark.RESERVATIONS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    static final int RESERVATIONS = 10000;
+
+    ArrayList<Reservation> reservations = new ArrayList<Reservation>(RESERVATIONS);
+    ArrayList<DefaultReservation> defaultReservations = new ArrayList<DefaultReservation>(RESERVATIONS);
+    byte[] compactBytes;
+    byte[] defaultBytes;
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < RESERVATIONS; i++) {
+            CarType type = Fleet.TYPES.get(random.nextInt(Fleet.TYPES.size()));
+            int start = Fleet.FIRST_DAY + random.nextInt(365);
+            int end = start + 1 + random.nextInt(7);
+            // copies, like the strings of entities read from the database
+            Quote quote = new Quote(new String(Fleet.renter(random.nextInt(Fleet.RENTERS))), start, end,
+                    new String(Fleet.COMPANY), new String(type.getName()), (end - start) * type.getRentalPricePerDay());
+            Reservation reservation = new Reservation(quote, random.nextInt(100000));
+            reservations.add(reservation);
+            defaultReservations.add(new DefaultReservation(reservation));
+        }
+
+        compactBytes = write(reservations);
+        defaultBytes = write(defaultReservations);
+
+        List<Reservation> read = (List<Reservation>) read(compactBytes);
+        for (int i = 0; i < RESERVATIONS; i++) {
+            Reservation expected = reservations.get(i);
+            Reservation actual = read.get(i);
+            if (!expected.equals(actual) || expected.getCarId() != actual.getCarId()
+                    || expected.getReservationId() != actual.getReservationId()) {
+                throw new IllegalStateException("Reservation " + i + " did not round-trip: " + actual);
+            }
+        }
+        List<CarType> types = (List<CarType>) read(write(new ArrayList<CarType>(Fleet.TYPES)));
+        for (int i = 0; i < types.size(); i++) {
+            CarType expected = Fleet.TYPES.get(i);
+            CarType actual = types.get(i);
+            if (!expected.toString().equals(actual.toString()) || expected.getId() != actual.getId()) {
+                throw new IllegalStateException("Car type did not round-trip: " + actual);
+            }
+        }
+
+        System.out.printf("%nbytes per reservation: compact %.1f, default %.1f%n",
+                (double) compactBytes.length / RESERVATIONS, (double) defaultBytes.length / RESERVATIONS);
+    }
+
+    @Benchmark
+    public byte[] writeCompact() throws IOException {
+        return write(reservations);
+    }
+
+    @Benchmark
+    public byte[] writeDefault() throws IOException {
+        return write(defaultReservations);
+    }
+
+    @Benchmark
+    public Object readCompact() throws Exception {
+        return read(compactBytes);
+    }
+
+    @Benchmark
+    public Object readDefault() throws Exception {
+        return read(defaultBytes);
+    }
+
+    private byte[] write(Object value) throws IOException {
+        buffer.reset();
+        ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(value);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    private static Object read(byte[] bytes) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The fields of a reservation, with default serialization.
+     */
+    static class DefaultReservation implements Serializable {
+
+        final int startDay;
+        final int endDay;
+        final String carRenter;
+        final String rentalCompany;
+        final String carType;
+        final double rentalPrice;
+        final int reservationId;
+        final int carId;
+
+        DefaultReservation(Reservation reservation) {
+            startDay = reservation.getStartDay();
+            endDay = reservation.getEndDay();
+            carRenter = reservation.getCarRenter();
+            rentalCompany = reservation.getRentalCompany();
+            carType = reservation.getCarType();
+            rentalPrice = reservation.getRentalPrice();
+            reservationId = reservation.getReservationId();
+            carId = reservation.getCarId();
+        }
+    }
+}
@@ -74,7 +74,8 @@ public abstract class AbstractTestManagement<ReservationSession, ManagerSession>
         super(scriptFile);
     }
 
-    ReservationSession managerResSession = null;
+    // a session bean may not be called concurrently, so every thread gets its own
+    private final ThreadLocal<ReservationSession> managerResSession = new ThreadLocal<ReservationSession>();
 	protected void processLine(String name, String cmd, List<Character> flags, StringTokenizer scriptLineTokens) throws ApplicationException {
 		if (cmd.startsWith("B")) {
 			super.processLine(name, cmd, flags, scriptLineTokens);
@@ -103,15 +104,15 @@ public abstract class AbstractTestManagement<ReservationSession, ManagerSession>
 		} else if (cmd.equals("MA")) {
             Date startDate = null, endDate = null;
 			try {
-	            startDate = DATE_FORMAT.parse(scriptLineTokens.nextToken());
-	            endDate = DATE_FORMAT.parse(scriptLineTokens.nextToken());
+	            startDate = parseDate(scriptLineTokens.nextToken());
+	            endDate = parseDate(scriptLineTokens.nextToken());
 			} catch(ParseException pe) {
 				throw new IllegalArgumentException(pe);
 			}
 			
-			if (managerResSession == null) {
+			if (managerResSession.get() == null) {
 				try {
-					managerResSession = getNewReservationSession("Manager");
+					managerResSession.set(getNewReservationSession("Manager"));
 				} catch (Exception e1) { throw new ApplicationException(e1); }
 			}
             
@@ -122,7 +123,7 @@ public abstract class AbstractTestManagement<ReservationSession, ManagerSession>
 
             String typeNameIs = null;
 			try {
-				typeNameIs = getCheapestCarType(managerResSession, startDate, endDate, region);
+				typeNameIs = getCheapestCarType(managerResSession.get(), startDate, endDate, region);
 			} catch (Exception e) { throw new ApplicationException(e); }
 			
             if (typeNameIs != null && typeNameShoudBe.contains(typeNameIs.toLowerCase())) {
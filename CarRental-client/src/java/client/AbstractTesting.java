@@ -2,12 +2,14 @@ package client;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Date;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.HashSet;
@@ -27,7 +29,14 @@ import java.util.Set;
  * to implement individual commands in the the processLine method.
  */
 public abstract class AbstractTesting {
-	protected static final DateFormat DATE_FORMAT = new SimpleDateFormat("d/M/y");
+	// SimpleDateFormat is not thread safe, so every thread parses with its own
+	private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			return new SimpleDateFormat("d/M/y");
+		}
+	};
+
 	protected final String scriptFile;		//name of the file containing the test script
 
 	public AbstractTesting(String scriptFile) {		
@@ -41,7 +50,17 @@ public abstract class AbstractTesting {
 	 * @throws Exception
 	 */
 	final public void run() throws Exception {
-		//read script		
+		int currentLine = 0;
+		for (String line : readScript()) {
+			currentLine++;
+			executeLine(currentLine, line);
+		}
+	}
+
+	/**
+	 * Reads all lines of the script.
+	 */
+	final List<String> readScript() throws IOException {
 		InputStream is = AbstractTesting.class.getClassLoader().getResourceAsStream(scriptFile);
 		BufferedReader in = null;
 		if (is != null) {	// scriptFile found inside a jar
@@ -50,50 +69,60 @@ public abstract class AbstractTesting {
 			in = new BufferedReader(new FileReader(scriptFile));
 		}
 		
-		int currentLine = 0;
-
-		while (in.ready()) {
-			currentLine++;
-			
-			//read line
-			String line = in.readLine();
-			//tokenize
-			StringTokenizer scriptLineTokens = new StringTokenizer(line, " ");
-			String name = scriptLineTokens.nextToken();
-			String cmdAndFlags = scriptLineTokens.nextToken();
-			
-			StringBuffer cmdTmp = new StringBuffer();
-			List<Character> flags = new ArrayList<Character>();	
-			
-			for (int i=0; i < cmdAndFlags.length(); i++) {
-				char test = cmdAndFlags.charAt(i);
-				if (Character.isLowerCase(test)) {
-					flags.add(test);
-				} else {
-					cmdTmp.append(test);
-				}
-			}			
-			
-			ApplicationException appException = null;
-			try {
-				processLine(name, cmdTmp.toString(), flags, scriptLineTokens);
-			} catch(ApplicationException ae) {
-				appException = ae;
-			} catch(IllegalArgumentException iae) {
-				System.err.println(String.format("Exception caused by script line %d (%s): %s", currentLine, line, iae.getMessage()));
-				throw iae;
-			}
-			
-			boolean shouldfail = flags.contains('c');
-			if(appException == null && shouldfail) {
-				System.err.println("command should have failed: " + line +" on line " + currentLine );
-			} else if(appException != null && !shouldfail) {
-				System.err.println("command failed: " + line +" on line " + currentLine );
-				appException.caughtException.printStackTrace();
+		List<String> lines = new ArrayList<String>();
+		try {
+			while (in.ready()) {
+				lines.add(in.readLine());
 			}
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
 
+	/**
+	 * Executes a single script line and reports whether it failed as expected.
+	 * 
+	 * @return true if the command behaved as the script expected
+	 */
+	final boolean executeLine(int currentLine, String line) {
+		//tokenize
+		StringTokenizer scriptLineTokens = new StringTokenizer(line, " ");
+		String name = scriptLineTokens.nextToken();
+		String cmdAndFlags = scriptLineTokens.nextToken();
+		
+		StringBuffer cmdTmp = new StringBuffer();
+		List<Character> flags = new ArrayList<Character>();	
+		
+		for (int i=0; i < cmdAndFlags.length(); i++) {
+			char test = cmdAndFlags.charAt(i);
+			if (Character.isLowerCase(test)) {
+				flags.add(test);
+			} else {
+				cmdTmp.append(test);
+			}
+		}			
+		
+		ApplicationException appException = null;
+		try {
+			processLine(name, cmdTmp.toString(), flags, scriptLineTokens);
+		} catch(ApplicationException ae) {
+			appException = ae;
+		} catch(IllegalArgumentException iae) {
+			System.err.println(String.format("Exception caused by script line %d (%s): %s", currentLine, line, iae.getMessage()));
+			throw iae;
+		}
+		
+		boolean shouldfail = flags.contains('c');
+		if(appException == null && shouldfail) {
+			System.err.println("command should have failed: " + line +" on line " + currentLine );
+			return false;
+		} else if(appException != null && !shouldfail) {
+			System.err.println("command failed: " + line +" on line " + currentLine );
+			appException.caughtException.printStackTrace();
+			return false;
 		}
-			
+		return true;
 	}
 	
 	/**
@@ -121,6 +150,13 @@ public abstract class AbstractTesting {
 		}
 	}
 
+	/**
+	 * Parses a date in the d/M/y format of the scripts.
+	 */
+	protected final static Date parseDate(String date) throws ParseException {
+		return DATE_FORMAT.get().parse(date);
+	}
+
 	/**
 	 * Utility function to join a list of Strings to a delimiter-separated String
 	 * 
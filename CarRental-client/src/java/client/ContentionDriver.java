@@ -0,0 +1,210 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import rental.EpochDays;
+import rental.Reservation;
+import rental.ReservationException;
+import rental.ReservationPage;
+import session.CarRentalSessionRemote;
+import session.ManagerSessionRemote;
+
+/**
+ * Confirms overlapping quotes for the few cars of one car type from many
+ * sessions at once, and checks afterwards that no car was booked twice.
+ *
+ * Every level of concurrency books in its own window of days, far enough in
+ * the future to be free, so the levels do not eat each other's cars. Each
+ * session confirms the given number of quotes one after the other, each from
+ * a fresh reservation session. Per level the confirmed, rejected and failed
+ * attempts and the confirmations per second are printed.
+ *
+ * Afterwards all reservations of the companies that were booked are read back
+ * and the reservations of every car are checked for overlap.
+ */
+public class ContentionDriver {
+
+    private static final String CAR_TYPE = "MPV";
+    private static final String REGION = "Brussels";
+    private static final int WINDOW_DAYS = 14;
+    private static final int MAX_RENTAL_DAYS = 3;
+    private static final int PAGE_SIZE = 500;
+
+    private final Main main;
+    private final int[] levels;
+    private final int attempts;
+
+    private final Set<String> companies = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public ContentionDriver(Main main, int[] levels, int attempts) {
+        if (levels.length == 0 || attempts < 1) {
+            throw new IllegalArgumentException("At least one level and one attempt are needed");
+        }
+        for (int sessions : levels) {
+            if (sessions < 1) {
+                throw new IllegalArgumentException("Sessions must be positive");
+            }
+        }
+        this.main = main;
+        this.levels = levels;
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return the number of cars that were booked twice for some day
+     */
+    public int run() throws Exception {
+        String run = Integer.toString(new Random().nextInt(Integer.MAX_VALUE), 36);
+        int firstDay = EpochDays.of(new Date()) + 365 + new Random().nextInt(3650);
+
+        System.out.println(String.format("Confirming %s quotes in %s, %d per session",
+                CAR_TYPE, REGION, attempts));
+        System.out.println(String.format("%8s %10s %10s %10s %12s",
+                "sessions", "confirmed", "rejected", "failed", "confirms/s"));
+        for (int l = 0; l < levels.length; l++) {
+            runLevel(run + "." + l, levels[l], firstDay + l * 2 * WINDOW_DAYS);
+        }
+        return checkOverlaps();
+    }
+
+    private void runLevel(String run, int sessions, int windowStart) throws Exception {
+        AtomicLong confirmed = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        List<Future<?>> renters = new ArrayList<Future<?>>();
+        long elapsed;
+        try {
+            for (int s = 0; s < sessions; s++) {
+                renters.add(executor.submit(new Renter("Contender#" + run + "." + s, windowStart,
+                        start, confirmed, rejected, failed)));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> renter : renters) {
+                renter.get();
+            }
+            elapsed = System.nanoTime() - begin;
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw e;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        System.out.println(String.format("%8d %10d %10d %10d %12.1f",
+                sessions, confirmed.get(), rejected.get(), failed.get(), confirmed.get() / (elapsed / 1e9)));
+    }
+
+    // reservation bounds are inclusive, so a car returned on the day it is picked up again is double booked
+    private int checkOverlaps() throws Exception {
+        ManagerSessionRemote ms = main.getNewManagerSession("Contention");
+        int doubleBooked = 0;
+        for (String company : companies) {
+            Map<Integer, List<Reservation>> byCar = new HashMap<Integer, List<Reservation>>();
+            ReservationPage page = null;
+            do {
+                page = ms.getReservationsAt(company, page == null ? null : page.getNextCursor(), PAGE_SIZE);
+                for (Reservation res : page.getReservations()) {
+                    List<Reservation> ofCar = byCar.get(res.getCarId());
+                    if (ofCar == null) {
+                        ofCar = new ArrayList<Reservation>();
+                        byCar.put(res.getCarId(), ofCar);
+                    }
+                    ofCar.add(res);
+                }
+            } while (page.hasNext());
+
+            for (Map.Entry<Integer, List<Reservation>> car : byCar.entrySet()) {
+                List<Reservation> ofCar = car.getValue();
+                Collections.sort(ofCar, new Comparator<Reservation>() {
+                    @Override
+                    public int compare(Reservation r1, Reservation r2) {
+                        return Integer.compare(r1.getStartDay(), r2.getStartDay());
+                    }
+                });
+                for (int i = 1; i < ofCar.size(); i++) {
+                    if (ofCar.get(i).getStartDay() <= ofCar.get(i - 1).getEndDay()) {
+                        System.err.println(String.format("Car %d of %s is double booked: %s and %s",
+                                car.getKey(), company, ofCar.get(i - 1), ofCar.get(i)));
+                        doubleBooked++;
+                        break;
+                    }
+                }
+            }
+        }
+        System.out.println(doubleBooked == 0 ? "No car was booked twice"
+                : String.format("%d car(s) were booked twice", doubleBooked));
+        return doubleBooked;
+    }
+
+    /**
+     * One session confirming its quotes, each for a random period in the window.
+     */
+    private class Renter implements Runnable {
+
+        private final String name;
+        private final int windowStart;
+        private final CountDownLatch start;
+        private final AtomicLong confirmed;
+        private final AtomicLong rejected;
+        private final AtomicLong failed;
+        private final Random random = new Random();
+
+        Renter(String name, int windowStart, CountDownLatch start,
+                AtomicLong confirmed, AtomicLong rejected, AtomicLong failed) {
+            this.name = name;
+            this.windowStart = windowStart;
+            this.start = start;
+            this.confirmed = confirmed;
+            this.rejected = rejected;
+            this.failed = failed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (int a = 0; a < attempts; a++) {
+                int startDay = windowStart + random.nextInt(WINDOW_DAYS - MAX_RENTAL_DAYS + 1);
+                int endDay = startDay + random.nextInt(MAX_RENTAL_DAYS);
+                try {
+                    // a session keeps its confirmed quotes, so every attempt starts a new one
+                    CarRentalSessionRemote session = main.getNewReservationSession(name);
+                    session.createQuote(name, EpochDays.toDate(startDay), EpochDays.toDate(endDay), CAR_TYPE, REGION);
+                    for (Reservation res : session.confirmQuotes()) {
+                        companies.add(res.getRentalCompany());
+                    }
+                    confirmed.incrementAndGet();
+                } catch (ReservationException e) {
+                    rejected.incrementAndGet();
+                } catch (Exception e) {
+                    System.err.println(String.format("Confirmation of %s failed: %s", name, e));
+                    failed.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import metrics.LatencyHistogram;
+
+/**
+ * Replays a test script under load.
+ *
+ * The lines of the script are partitioned by client name. Every client replays
+ * its own lines in script order, while different clients run concurrently on a
+ * fixed pool of threads. The script is replayed the given number of times.
+ *
+ * Without randomization all repetitions of a client share its name (and thus
+ * its reservation session), so they run one after the other. With
+ * randomization every repetition rents under a fresh name and the repetitions
+ * run concurrently as well. Only the renter commands are renamed; the names
+ * of manager commands refer to companies or expected results.
+ *
+ * Afterwards the throughput and latency percentiles of every command are
+ * printed.
+ */
+public class LoadDriver {
+
+    private static final Set<String> RENTER_COMMANDS
+            = new HashSet<String>(Arrays.asList("BS", "BA", "BB", "BF", "BMR"));
+
+    private final AbstractTesting testing;
+    private final int concurrency;
+    private final int repetitions;
+    private final boolean randomizeRenters;
+
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> unexpected = new ConcurrentHashMap<String, AtomicLong>();
+
+    public LoadDriver(AbstractTesting testing, int concurrency, int repetitions, boolean randomizeRenters) {
+        if (concurrency < 1 || repetitions < 1) {
+            throw new IllegalArgumentException("Concurrency and repetitions must be positive");
+        }
+        this.testing = testing;
+        this.concurrency = concurrency;
+        this.repetitions = repetitions;
+        this.randomizeRenters = randomizeRenters;
+    }
+
+    public void run() throws Exception {
+        Map<String, List<Integer>> linesByClient = new LinkedHashMap<String, List<Integer>>();
+        final List<String> script = testing.readScript();
+        for (int i = 0; i < script.size(); i++) {
+            String client = new StringTokenizer(script.get(i), " ").nextToken();
+            List<Integer> lines = linesByClient.get(client);
+            if (lines == null) {
+                lines = new ArrayList<Integer>();
+                linesByClient.put(client, lines);
+            }
+            lines.add(i);
+        }
+
+        String run = Integer.toString(new Random().nextInt(Integer.MAX_VALUE), 36);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<?>> replays = new ArrayList<Future<?>>();
+        long start = System.nanoTime();
+        try {
+            for (List<Integer> lines : linesByClient.values()) {
+                if (randomizeRenters) {
+                    for (int r = 0; r < repetitions; r++) {
+                        replays.add(executor.submit(new Replay(script, lines, run + "." + r, 1)));
+                    }
+                } else {
+                    replays.add(executor.submit(new Replay(script, lines, null, repetitions)));
+                }
+            }
+            for (Future<?> replay : replays) {
+                replay.get();
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw e;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        report(System.nanoTime() - start);
+    }
+
+    private void execute(int lineNumber, String line) {
+        String command = commandOf(line);
+        LatencyHistogram histogram = latencies.get(command);
+        if (histogram == null) {
+            latencies.putIfAbsent(command, new LatencyHistogram());
+            unexpected.putIfAbsent(command, new AtomicLong());
+            histogram = latencies.get(command);
+        }
+
+        long start = System.nanoTime();
+        boolean expected = testing.executeLine(lineNumber, line);
+        histogram.record(System.nanoTime() - start);
+        if (!expected) {
+            unexpected.get(command).incrementAndGet();
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format("Replayed %d time(s) with %d thread(s) in %.2f s",
+                repetitions, concurrency, seconds));
+        System.out.println(String.format("%-5s %8s %10s %10s %10s %10s %10s %10s",
+                "cmd", "count", "unexpected", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(latencies).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            System.out.println(String.format("%-5s %8d %10d %10.1f %10.2f %10.2f %10.2f %10.2f",
+                    entry.getKey(),
+                    histogram.getCount(),
+                    unexpected.get(entry.getKey()).get(),
+                    histogram.getCount() / seconds,
+                    millis(histogram.getPercentile(0.5)),
+                    millis(histogram.getPercentile(0.99)),
+                    millis(histogram.getPercentile(0.999)),
+                    millis(histogram.getMax())));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String commandOf(String line) {
+        StringTokenizer tokens = new StringTokenizer(line, " ");
+        tokens.nextToken();
+        String cmdAndFlags = tokens.nextToken();
+        StringBuilder cmd = new StringBuilder();
+        for (int i = 0; i < cmdAndFlags.length(); i++) {
+            if (!Character.isLowerCase(cmdAndFlags.charAt(i))) {
+                cmd.append(cmdAndFlags.charAt(i));
+            }
+        }
+        return cmd.toString();
+    }
+
+    /**
+     * The lines of one client, replayed a number of times.
+     */
+    private class Replay implements Runnable {
+
+        private final List<String> script;
+        private final List<Integer> lines;
+        private final String suffix;
+        private final int times;
+
+        Replay(List<String> script, List<Integer> lines, String suffix, int times) {
+            this.script = script;
+            this.lines = lines;
+            this.suffix = suffix;
+            this.times = times;
+        }
+
+        @Override
+        public void run() {
+            for (int t = 0; t < times; t++) {
+                for (int i : lines) {
+                    String line = script.get(i);
+                    if (suffix != null && RENTER_COMMANDS.contains(commandOf(line))) {
+                        int end = line.indexOf(' ');
+                        line = line.substring(0, end) + "#" + suffix + line.substring(end);
+                    }
+                    execute(i + 1, line);
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,12 @@ public class Main extends AbstractTestManagement<CarRentalSessionRemote, Manager
         super(scriptFile);
     }
 
+    /**
+     * Runs the trips script once, or replays it under load when started as
+     * {@code load [concurrency] [repetitions] [randomize]}, or confirms
+     * competing quotes when started as
+     * {@code contention [attempts] [sessions...]}.
+     */
     public static void main(String[] args) throws Exception {     
         Main main = new Main("trips");
         ManagerSessionRemote ms = main.getNewManagerSession("root");
@@ -23,7 +29,23 @@ public class Main extends AbstractTestManagement<CarRentalSessionRemote, Manager
         ms.persistRental("hertz.csv");
         ms.persistRental("dockx.csv");
         
-        main.run();
+        if (args.length > 0 && args[0].equals("load")) {
+            int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+            boolean randomize = args.length > 3 && Boolean.parseBoolean(args[3]);
+            new LoadDriver(main, concurrency, repetitions, randomize).run();
+        } else if (args.length > 0 && args[0].equals("contention")) {
+            int attempts = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+            int[] levels = args.length > 2 ? new int[args.length - 2] : new int[]{1, 8, 32, 128};
+            for (int i = 2; i < args.length; i++) {
+                levels[i - 2] = Integer.parseInt(args[i]);
+            }
+            if (new ContentionDriver(main, levels, attempts).run() > 0) {
+                System.exit(1);
+            }
+        } else {
+            main.run();
+        }
     }
 
     @Override
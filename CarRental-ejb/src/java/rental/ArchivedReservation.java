@@ -0,0 +1,121 @@
+package rental;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * A reservation that ended before the archive cutoff, moved out of the
+ * reservations so the availability queries no longer pass over it. It keeps
+ * its reservation id, and stores the year in which it starts, like the
+ * statistics, so a yearly report reads a single range of the year index.
+ */
+@NamedQueries({
+    @NamedQuery(name = "getReservationsToArchive", query
+            = "SELECT r FROM Reservation r "
+            + "WHERE r.endDay < :cutoffDayInput "
+            + "ORDER BY r.reservationId"
+    ),
+    
+    @NamedQuery(name = "deleteReservationsById", query
+            = "DELETE FROM Reservation r WHERE r.reservationId IN :reservationIdsInput"
+    ),
+    
+    @NamedQuery(name = "getNumberOfArchivedReservationsForCarType", query
+            = "SELECT COUNT(a.reservationId) "
+            + "FROM ArchivedReservation a "
+            + "WHERE a.rentalCompany = :rentalCompanyInput AND a.carType = :carTypeInput "
+    ),
+    
+    @NamedQuery(name = "getNumberOfArchivedReservationsForCar", query
+            = "SELECT COUNT(a.reservationId) "
+            + "FROM ArchivedReservation a "
+            + "WHERE a.rentalCompany = :rentalCompanyInput AND a.carId = :carIdInput "
+    ),
+    
+    @NamedQuery(name = "countArchivedReservationsPerRenter", query
+            = "SELECT a.carRenter, COUNT(a.reservationId) "
+            + "FROM ArchivedReservation a "
+            + "GROUP BY a.carRenter"
+    ),
+    
+    @NamedQuery(name = "countArchivedReservationsPerCarTypeAndYear", query
+            = "SELECT a.rentalCompany, a.carType, a.year, COUNT(a.reservationId) "
+            + "FROM ArchivedReservation a "
+            + "GROUP BY a.rentalCompany, a.carType, a.year"
+    ),
+    
+    @NamedQuery(name = "getArchivedReservationsByRenterPage", query
+            = "SELECT a FROM ArchivedReservation a "
+            + "WHERE a.carRenter = :carRenterInput AND a.startDay >= :startDayInput "
+            + "    AND (a.startDay > :startDayInput OR a.reservationId > :reservationIdInput) "
+            + "ORDER BY a.startDay, a.reservationId"
+    ),
+    
+    @NamedQuery(name = "getArchivedReservationsAtCompanyPage", query
+            = "SELECT a FROM ArchivedReservation a "
+            + "WHERE a.rentalCompany = :rentalCompanyInput AND a.startDay >= :startDayInput "
+            + "    AND (a.startDay > :startDayInput OR a.reservationId > :reservationIdInput) "
+            + "ORDER BY a.startDay, a.reservationId"
+    ),
+})
+
+@Entity
+@Table(indexes = {
+    @Index(name = "ARCHIVE_YEAR_COMPANY_TYPE", columnList = "RESERVATIONYEAR, RENTALCOMPANY, CARTYPE"),
+    @Index(name = "ARCHIVE_COMPANY_TYPE", columnList = "RENTALCOMPANY, CARTYPE"),
+    @Index(name = "ARCHIVE_COMPANY_CAR", columnList = "RENTALCOMPANY, CARID"),
+    @Index(name = "ARCHIVE_RENTER_HISTORY", columnList = "CARRENTER, STARTDAY, RESERVATIONID"),
+    @Index(name = "ARCHIVE_COMPANY_HISTORY", columnList = "RENTALCOMPANY, STARTDAY, RESERVATIONID")
+})
+public class ArchivedReservation {
+
+    @Id
+    private int reservationId;
+    
+    private int carId;
+    private String carRenter;
+    private String rentalCompany;
+    private String carType;
+    private int startDay;
+    private int endDay;
+    private double rentalPrice;
+    
+    @Column(name = "RESERVATIONYEAR")
+    private int year;
+
+    /***************
+     * CONSTRUCTOR *
+     ***************/
+    
+    public ArchivedReservation() {}
+    
+    public ArchivedReservation(Reservation res) {
+        this.reservationId = res.getReservationId();
+        this.carId = res.getCarId();
+        this.carRenter = res.getCarRenter();
+        this.rentalCompany = res.getRentalCompany();
+        this.carType = res.getCarType();
+        this.startDay = res.getStartDay();
+        this.endDay = res.getEndDay();
+        this.rentalPrice = res.getRentalPrice();
+        this.year = EpochDays.yearOf(startDay);
+    }
+
+    public int getReservationId() {
+        return reservationId;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public Reservation toReservation() {
+        return new Reservation(reservationId,
+                new Quote(carRenter, startDay, endDay, rentalCompany, carType, rentalPrice), carId);
+    }
+}
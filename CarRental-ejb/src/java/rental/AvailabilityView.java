@@ -0,0 +1,268 @@
+package rental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which cars are free when, kept apart from the entities as primitive
+ * per-car interval indexes.
+ *
+ * A view is filled with the fleets of the companies and the periods of the
+ * reservations, and then kept up to date by applying {@link ReservationEvent}s.
+ * Applying an event is idempotent: a confirmation of a known reservation and a
+ * cancellation of an unknown one are ignored, so events may be replayed over
+ * a view that already contains them, and the events of different reservations
+ * may arrive in any order. A view is not thread-safe.
+ */
+public class AvailabilityView {
+
+    // company name -> car type name -> cars of that type
+    private final Map<String, Map<String, Fleet>> companies = new HashMap<String, Map<String, Fleet>>();
+    private final IntMap<Slot> cars = new IntMap<Slot>(1024);
+    // reservation id -> {car id, start day, end day}
+    private final IntMap<int[]> reservations = new IntMap<int[]>(1024);
+    // cancellations that arrived before their confirmation
+    private final IntMap<Boolean> cancelledEarly = new IntMap<Boolean>(16);
+
+    public void addCar(String company, CarType type, int carId) {
+        if (cars.get(carId) != null) {
+            throw new IllegalArgumentException("Car " + carId + " was added before");
+        }
+        Map<String, Fleet> fleets = companies.get(company);
+        if (fleets == null) {
+            fleets = new LinkedHashMap<String, Fleet>();
+            companies.put(company, fleets);
+        }
+        Fleet fleet = fleets.get(type.getName());
+        if (fleet == null) {
+            fleet = new Fleet(company, type);
+            fleets.put(type.getName(), fleet);
+        }
+        cars.put(carId, new Slot(fleet, fleet.add(carId)));
+    }
+
+    /**
+     * @return false if the reservation was known already or its car is not
+     * part of the view
+     */
+    public boolean book(int reservationId, int carId, int startDay, int endDay) {
+        Slot slot = cars.get(carId);
+        if (slot == null || reservations.get(reservationId) != null || cancelledEarly.remove(reservationId) != null) {
+            return false;
+        }
+        slot.fleet.indexes[slot.index].add(startDay, endDay);
+        reservations.put(reservationId, new int[]{carId, startDay, endDay});
+        return true;
+    }
+
+    /**
+     * Reservation ids are never reused, so a later confirmation of an unknown
+     * reservation is ignored.
+     *
+     * @return false if the reservation was not known
+     */
+    public boolean release(int reservationId) {
+        int[] res = reservations.remove(reservationId);
+        if (res == null) {
+            cancelledEarly.put(reservationId, Boolean.TRUE);
+            return false;
+        }
+        Slot slot = cars.get(res[0]);
+        slot.fleet.indexes[slot.index].remove(res[1], res[2]);
+        return true;
+    }
+
+    /**
+     * @return whether the event changed the view
+     */
+    public boolean apply(ReservationEvent event) {
+        switch (event.getKind()) {
+            case CONFIRMED:
+                return book(event.getReservationId(), event.getCarId(), event.getStartDay(), event.getEndDay());
+            case CANCELLED:
+            case ARCHIVED:
+                return release(event.getReservationId());
+            default:
+                throw new IllegalArgumentException("Unknown event " + event);
+        }
+    }
+
+    public int getNumberOfCars() {
+        return cars.size();
+    }
+
+    public int getNumberOfReservations() {
+        return reservations.size();
+    }
+
+    public boolean isAvailable(String company, String carType, int startDay, int endDay) {
+        Map<String, Fleet> fleets = companies.get(company);
+        Fleet fleet = fleets == null ? null : fleets.get(carType);
+        return fleet != null && fleet.hasFreeCar(startDay, endDay);
+    }
+
+    /**
+     * The car types with a free car in the period, per company in the given
+     * order.
+     */
+    public List<CarType> getAvailableCarTypes(Collection<String> companyNames, int startDay, int endDay) {
+        List<CarType> available = new ArrayList<CarType>();
+        for (String company : companyNames) {
+            Map<String, Fleet> fleets = companies.get(company);
+            if (fleets == null) {
+                continue;
+            }
+            for (Fleet fleet : fleets.values()) {
+                if (fleet.hasFreeCar(startDay, endDay)) {
+                    available.add(fleet.type);
+                }
+            }
+        }
+        return available;
+    }
+
+    /**
+     * The cheapest car type with a free car in the period at one of the
+     * companies, or null. Only types cheaper than the best so far are checked
+     * for a free car.
+     */
+    public CarType getCheapestCarType(Collection<String> companyNames, int startDay, int endDay) {
+        CarType cheapest = null;
+        double lowest = Double.MAX_VALUE;
+        for (String company : companyNames) {
+            Map<String, Fleet> fleets = companies.get(company);
+            if (fleets == null) {
+                continue;
+            }
+            for (Fleet fleet : fleets.values()) {
+                double price = CarRentalCompany.calculateRentalPrice(fleet.type, startDay, endDay);
+                if (price < lowest && fleet.hasFreeCar(startDay, endDay)) {
+                    cheapest = fleet.type;
+                    lowest = price;
+                }
+            }
+        }
+        return cheapest;
+    }
+
+    /**
+     * The companies with a free car of the type in the period, as rows of
+     * company name and car type like the getCompaniesForCarType query.
+     */
+    public List<Object[]> getCompaniesForCarType(Collection<String> companyNames, String carType, int startDay, int endDay) {
+        List<Object[]> result = new ArrayList<Object[]>();
+        for (String company : companyNames) {
+            Map<String, Fleet> fleets = companies.get(company);
+            Fleet fleet = fleets == null ? null : fleets.get(carType);
+            if (fleet != null && fleet.hasFreeCar(startDay, endDay)) {
+                result.add(new Object[]{company, fleet.type});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Describes how this view differs from the expected one, such as a view
+     * freshly loaded from the database.
+     *
+     * @param limit the maximum number of differences described
+     */
+    public List<String> differences(AvailabilityView expected, int limit) {
+        List<String> found = new ArrayList<String>();
+        for (int carId : sorted(expected.cars.keys())) {
+            Slot want = expected.cars.get(carId);
+            Slot have = cars.get(carId);
+            if (have == null) {
+                found.add("missing car " + carId + " of " + want.fleet);
+            } else if (!have.fleet.describes(want.fleet)) {
+                found.add("car " + carId + " belongs to " + have.fleet + " instead of " + want.fleet);
+            }
+        }
+        for (int carId : sorted(cars.keys())) {
+            if (expected.cars.get(carId) == null) {
+                found.add("unknown car " + carId + " of " + cars.get(carId).fleet);
+            }
+        }
+        for (int reservationId : sorted(expected.reservations.keys())) {
+            int[] want = expected.reservations.get(reservationId);
+            int[] have = reservations.get(reservationId);
+            if (have == null) {
+                found.add("missing reservation " + reservationId + " " + Arrays.toString(want));
+            } else if (!Arrays.equals(have, want)) {
+                found.add("reservation " + reservationId + " is " + Arrays.toString(have) + " instead of " + Arrays.toString(want));
+            }
+        }
+        for (int reservationId : sorted(reservations.keys())) {
+            if (expected.reservations.get(reservationId) == null) {
+                found.add("unknown reservation " + reservationId + " " + Arrays.toString(reservations.get(reservationId)));
+            }
+        }
+        return found.size() > limit ? found.subList(0, limit) : found;
+    }
+
+    private static int[] sorted(int[] keys) {
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * The cars of one car type at one company.
+     */
+    private static class Fleet {
+
+        final String company;
+        final CarType type;
+        int[] carIds = new int[4];
+        ReservationIndex[] indexes = new ReservationIndex[4];
+        int size;
+
+        Fleet(String company, CarType type) {
+            this.company = company;
+            this.type = type;
+        }
+
+        int add(int carId) {
+            if (size == carIds.length) {
+                carIds = Arrays.copyOf(carIds, size * 2);
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            carIds[size] = carId;
+            indexes[size] = new ReservationIndex();
+            return size++;
+        }
+
+        boolean hasFreeCar(int startDay, int endDay) {
+            for (int i = 0; i < size; i++) {
+                if (!indexes[i].overlaps(startDay, endDay)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean describes(Fleet other) {
+            return company.equals(other.company) && type.getName().equals(other.type.getName());
+        }
+
+        @Override
+        public String toString() {
+            return company + "/" + type.getName();
+        }
+    }
+
+    private static class Slot {
+
+        final Fleet fleet;
+        final int index;
+
+        Slot(Fleet fleet, int index) {
+            this.fleet = fleet;
+            this.index = index;
+        }
+    }
+}
@@ -1,29 +1,54 @@
 package rental;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
-import static javax.persistence.CascadeType.ALL;
-import static javax.persistence.CascadeType.REMOVE;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
-import javax.persistence.OneToMany;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 
 @Entity
+@Table(indexes = @Index(name = "CAR_COMPANY_TYPE", columnList = "COMPANY_NAME, TYPE_ID"))
 public class Car {
 
+    // ids are handed out in blocks, so the provider can batch the inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "CarIds")
+    @TableGenerator(name = "CarIds", allocationSize = 500)
     private int id;
     
+    // bumped on every booking, so concurrent bookings of the same car conflict
+    @Version
+    private int version;
+    
+    @ManyToOne
+    private CarRentalCompany company;
+    
     @ManyToOne
     private CarType type;
     
-    @OneToMany(cascade=ALL)
-    private Set<Reservation> reservations;
+    // the reservations overlapping the window of days from windowStart until
+    // windowEnd; a car loaded by JPA knows none until loadReservations is called
+    @Transient
+    private Set<Reservation> reservations = new HashSet<Reservation>();
+    
+    @Transient
+    private int windowStart = 1;
+    
+    @Transient
+    private int windowEnd = 0;
+    
+    // built lazily from the reservations
+    @Transient
+    private ReservationIndex reservationIndex;
 
     /***************
      * CONSTRUCTOR *
@@ -31,10 +56,23 @@ public class Car {
     
     public Car(){}
     
+    /**
+     * New car without reservations, which knows about every reservation made
+     * for it from then on.
+     */
     public Car(int uid, CarType type) {
     	this.id = uid;
         this.type = type;
-        this.reservations = new HashSet<Reservation>();
+        this.windowStart = Integer.MIN_VALUE;
+        this.windowEnd = Integer.MAX_VALUE;
+    }
+    
+    /**
+     * New car of the given company, which gets its id when it is persisted.
+     */
+    public Car(CarRentalCompany company, CarType type) {
+        this(0, type);
+        this.company = company;
     }
 
     /******
@@ -45,6 +83,18 @@ public class Car {
     	return id;
     }
     
+    /***********
+     * COMPANY *
+     ***********/
+    
+    public CarRentalCompany getCompany() {
+        return company;
+    }
+    
+    void setCompany(CarRentalCompany company) {
+        this.company = company;
+    }
+    
     /************
      * CAR TYPE *
      ************/
@@ -64,24 +114,100 @@ public class Car {
         if(!start.before(end))
             throw new IllegalArgumentException("Illegal given period");
 
-        for(Reservation reservation : reservations) {
-            if(reservation.getEndDate().before(start) || reservation.getStartDate().after(end))
-                continue;
-            return false;
+        return isAvailable(EpochDays.of(start), EpochDays.of(end));
+    }
+    
+    public boolean isAvailable(int startDay, int endDay) {
+        checkLoaded(startDay, endDay);
+        return !getReservationIndex().overlaps(startDay, endDay);
+    }
+    
+    /**
+     * The runs of free days of this car within the loaded window, in order, as
+     * pairs of their first and last day.
+     */
+    public int[] getFreeGaps() {
+        return getReservationIndex().freeGaps(windowStart, windowEnd);
+    }
+    
+    int getWindowStart() {
+        return windowStart;
+    }
+    
+    int getWindowEnd() {
+        return windowEnd;
+    }
+    
+    /**
+     * Whether all reservations of this car on the days of the period are known.
+     */
+    public boolean covers(int startDay, int endDay) {
+        return windowStart <= startDay && endDay <= windowEnd;
+    }
+    
+    /**
+     * Replaces the known reservations by the given ones, which must be all
+     * reservations of this car overlapping the days from until until.
+     */
+    public void loadReservations(int from, int until, Collection<Reservation> overlapping) {
+        reservations = new HashSet<Reservation>(overlapping);
+        windowStart = from;
+        windowEnd = until;
+        reservationIndex = null;
+    }
+    
+    private void checkLoaded(int startDay, int endDay) {
+        if (!covers(startDay, endDay)) {
+            throw new IllegalStateException("Reservations of car " + id + " are not loaded for days "
+                    + startDay + " until " + endDay);
         }
-        return true;
     }
     
-    public void addReservation(Reservation res) {
-        reservations.add(res);
+    /**
+     * The reservation has to lie within the loaded window, like any period
+     * that was checked for availability.
+     */
+    public boolean addReservation(Reservation res) {
+        checkLoaded(res.getStartDay(), res.getEndDay());
+        if (!reservations.add(res)) {
+            return false;
+        }
+        if (reservationIndex != null) {
+            reservationIndex.add(res.getStartDay(), res.getEndDay());
+        }
+        return true;
     }
     
-    public void removeReservation(Reservation reservation) {
+    /**
+     * @return false if the reservation was not known, possibly since it lies
+     * outside the loaded window
+     */
+    public boolean removeReservation(Reservation reservation) {
         // equals-method for Reservation is required!
-        reservations.remove(reservation);
+        if (!reservations.remove(reservation)) {
+            return false;
+        }
+        if (reservationIndex != null) {
+            reservationIndex.remove(reservation.getStartDay(), reservation.getEndDay());
+        }
+        return true;
     }
 
+    /**
+     * The known reservations: those overlapping the loaded window.
+     */
     public Set<Reservation> getReservations() {
         return reservations;
     }
+    
+    private ReservationIndex getReservationIndex() {
+        if (reservationIndex == null) {
+            ReservationIndex index = new ReservationIndex(reservations.size());
+            for (Reservation reservation : reservations) {
+                index.add(reservation.getStartDay(), reservation.getEndDay());
+            }
+            reservationIndex = index;
+        }
+        return reservationIndex;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package rental;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The built-in allocation strategies. First-fit and best-fit look the period
+ * up in the free gaps of the fleet; random makes a single pass over the cars,
+ * since it has to know all free ones to pick one uniformly.
+ */
+public enum CarAllocation implements CarAllocationStrategy {
+
+    /**
+     * A free car chosen uniformly at random, by reservoir sampling.
+     */
+    RANDOM {
+        @Override
+        public Car allocate(FreeGapIndex fleet, int startDay, int endDay) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Car chosen = null;
+            int free = 0;
+            for (Car car : fleet.getCars()) {
+                if (car.isAvailable(startDay, endDay) && random.nextInt(++free) == 0) {
+                    chosen = car;
+                }
+            }
+            return chosen;
+        }
+    },
+
+    /**
+     * The free car whose free gap around the period starts earliest, which
+     * fills the fleet from the front of the calendar.
+     */
+    FIRST_FIT {
+        @Override
+        public Car allocate(FreeGapIndex fleet, int startDay, int endDay) {
+            return fleet.firstFit(startDay, endDay);
+        }
+    },
+
+    /**
+     * The free car with the tightest gap around the period, which keeps the
+     * long free stretches of the other cars for long rentals.
+     */
+    BEST_FIT {
+        @Override
+        public Car allocate(FreeGapIndex fleet, int startDay, int endDay) {
+            return fleet.bestFit(startDay, endDay);
+        }
+    };
+
+    private static final Logger logger = Logger.getLogger(CarAllocation.class.getName());
+
+    /**
+     * The strategy named by the rental.allocation system property (random,
+     * first-fit or best-fit), random if it is not set or names none of them.
+     */
+    public static CarAllocationStrategy fromSystemProperty() {
+        String name = System.getProperty("rental.allocation", "random");
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Unknown car allocation strategy {0}, allocating at random", name);
+            return RANDOM;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package rental;
+
+/**
+ * Picks the car that serves a reservation among the cars of its type.
+ */
+public interface CarAllocationStrategy {
+
+    /**
+     * One of the cars that is free from startDay until endDay, or null if none
+     * of them is.
+     *
+     * @param fleet the cars of the type, with the index of their free gaps
+     */
+    Car allocate(FreeGapIndex fleet, int startDay, int endDay);
+}
@@ -1,106 +1,183 @@
 package rental;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static javax.persistence.CascadeType.ALL;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.NamedSubgraph;
 import javax.persistence.OneToMany;
+import javax.persistence.Transient;
 
 @NamedQueries({
     @NamedQuery(name="getAllCompanies", query="SELECT c.name FROM CarRentalCompany c"),
     
     @NamedQuery(name="getAllCompaniesObjects", query="Select crc FROM CarRentalCompany crc"),
     
-    @NamedQuery(name = "getAvailableCarTypes", query
-            = "SELECT DISTINCT c.type FROM Car c WHERE c.id NOT IN ("
-            + "  SELECT r.carId "
+    @NamedQuery(name = "getAvailableCarTypeNamesPerCompany", query
+            = "SELECT DISTINCT crc.name, c.type.name "
+            + "FROM CarRentalCompany crc, IN (crc.cars) c "
+            + "WHERE crc.name IN :crcNamesInput AND NOT EXISTS ("
+            + "  SELECT r.reservationId "
             + "  FROM Reservation r "
-            + "  WHERE (:startDateInput BETWEEN r.startDate AND r.endDate) "
-            + "      OR (:endDateInput BETWEEN r.startDate AND r.endDate) "
-            + "  ) " 
+            + "  WHERE r.carId = c.id "
+            + "      AND r.startDay <= :endDayInput AND r.endDay >= :startDayInput "
+            + "  ) "
     ),
     
     @NamedQuery(name = "getAvailableCarTypesForCompany", query
             = "SELECT DISTINCT c.type.name "
             + "FROM CarRentalCompany crc, IN (crc.cars) c "
-            + " WHERE c.id NOT IN ("
-            + "  SELECT r.carId "
+            + " WHERE NOT EXISTS ("
+            + "  SELECT r.reservationId "
             + "  FROM Reservation r "
-            + "  WHERE (:startDateInput BETWEEN r.startDate AND r.endDate) "
-            + "      OR (:endDateInput BETWEEN r.startDate AND r.endDate) "
+            + "  WHERE r.carId = c.id "
+            + "      AND r.startDay <= :endDayInput AND r.endDay >= :startDayInput "
             + "  ) AND crc.name LIKE :crcNameInput"
             + "    AND c.type.name LIKE :carTypeInput" 
     ),
     
-    @NamedQuery(name = "getNumberOfReservations", query
-            = "SELECT COUNT(r.reservationId) " +
-               "FROM Reservation r " +
-               "GROUP BY r.carRenter " + 
-               "ORDER BY 1 DESC "
+    @NamedQuery(name = "getAvailableCarTypesInCompanies", query
+            = "SELECT DISTINCT c.type "
+            + "FROM CarRentalCompany crc, IN (crc.cars) c "
+            + "WHERE crc.name IN :crcNamesInput AND NOT EXISTS ("
+            + "  SELECT r.reservationId "
+            + "  FROM Reservation r "
+            + "  WHERE r.carId = c.id "
+            + "      AND r.startDay <= :endDayInput AND r.endDay >= :startDayInput "
+            + "  ) "
     ),
     
-    @NamedQuery(name = "getClientsForNumberOfReservations", query
-            = "SELECT r.carRenter "
-            + "FROM Reservation r "
-            + "GROUP BY r.carRenter "
-            + "HAVING COUNT(r.reservationId) = :maxReservations"
+    @NamedQuery(name = "getCompaniesForCarType", query
+            = "SELECT DISTINCT crc.name, c.type "
+            + "FROM CarRentalCompany crc, IN (crc.cars) c "
+            + "WHERE crc.name IN :crcNamesInput AND c.type.name = :carTypeInput AND NOT EXISTS ("
+            + "  SELECT r.reservationId "
+            + "  FROM Reservation r "
+            + "  WHERE r.carId = c.id "
+            + "      AND r.startDay <= :endDayInput AND r.endDay >= :startDayInput "
+            + "  ) "
     ),
-        
-    @NamedQuery(name = "getNumberOfReservationsForCompany", query
-            ="SELECT COUNT(r.reservationId) "
+    
+    @NamedQuery(name = "getNumberOfReservationsForCarType", query
+            = "Select Count(r.reservationId) "
             + "FROM Reservation r "
-            + "WHERE r.rentalCompany LIKE :rentalCompanyInput AND EXTRACT(YEAR FROM r.startDate) = :yearInput "
-            + "GROUP BY r.carType "
-            + "ORDER BY 1 DESC"
+            + "WHERE r.rentalCompany = :rentalCompanyInput AND r.carType = :carTypeInput "
     ),
     
-    @NamedQuery(name = "getCarTypeForNumberOfReservationsForCompany", query
-            = "SELECT r.carType "
+    @NamedQuery(name = "getNumberOfReservationsForCar", query
+            = "SELECT COUNT(r.reservationId) "
             + "FROM Reservation r "
-            + "WHERE r.rentalCompany LIKE :rentalCompanyInput AND EXTRACT(YEAR FROM r.startDate) = :yearInput "
-            + "GROUP BY r.carType "
-            + "HAVING COUNT(r.reservationId) = :maxReservations "
+            + "WHERE r.rentalCompany = :rentalCompanyInput AND r.carId = :carIdInput "
     ),
-          
-    @NamedQuery(name= "getNumberOfReservationsByClient", query
-            = "SELECT COUNT(r.reservationId) " + 
-                "FROM Reservation r " +
-                "WHERE r.carRenter LIKE :carRenterInput " +
-                "GROUP BY r.carRenter "
+    
+    @NamedQuery(name = "getCarIdsForCarType", query
+            = "SELECT c.id "
+            + "FROM Car c "
+            + "WHERE c.company.name = :rentalCompanyInput AND c.type.name = :carTypeInput "
     ),
     
-    @NamedQuery(name = "getNumberOfReservationsForCarType", query
-            = "Select Count(r.reservationId) "
-            + "FROM Reservation r "
-            + "WHERE r.rentalCompany LIKE :rentalCompanyInput AND r.carType LIKE :carTypeInput "
-            + "GROUP BY r.carType"
+    @NamedQuery(name = "getAllCars", query
+            = "SELECT c.company.name, c.type, c.id FROM Car c"
+    ),
+    
+    @NamedQuery(name = "getAllReservationPeriods", query
+            = "SELECT r.reservationId, r.carId, r.startDay, r.endDay FROM Reservation r"
+    ),
+    
+    @NamedQuery(name = "getReservationsOfCarTypeInWindow", query
+            = "SELECT r FROM Reservation r "
+            + "WHERE r.rentalCompany = :rentalCompanyInput AND r.carType = :carTypeInput "
+            + "    AND r.startDay <= :untilInput AND r.endDay >= :fromInput"
+    ),
+    
+    @NamedQuery(name = "getReservationsInWindow", query
+            = "SELECT r FROM Reservation r "
+            + "WHERE r.rentalCompany = :rentalCompanyInput "
+            + "    AND r.startDay <= :untilInput AND r.endDay >= :fromInput"
+    ),
+    
+    @NamedQuery(name = "getReservationsByRenterPage", query
+            = "SELECT r FROM Reservation r "
+            + "WHERE r.carRenter = :carRenterInput AND r.startDay >= :startDayInput "
+            + "    AND (r.startDay > :startDayInput OR r.reservationId > :reservationIdInput) "
+            + "ORDER BY r.startDay, r.reservationId"
+    ),
+    
+    @NamedQuery(name = "getReservationsAtCompanyPage", query
+            = "SELECT r FROM Reservation r "
+            + "WHERE r.rentalCompany = :rentalCompanyInput AND r.startDay >= :startDayInput "
+            + "    AND (r.startDay > :startDayInput OR r.reservationId > :reservationIdInput) "
+            + "ORDER BY r.startDay, r.reservationId"
     ),
 })
 
+// the fleet with the types of its cars, fetched together instead of car by car
+@NamedEntityGraph(name = "CarRentalCompany.fleet",
+        attributeNodes = {@NamedAttributeNode(value = "cars", subgraph = "car"), @NamedAttributeNode("carTypes")},
+        subgraphs = @NamedSubgraph(name = "car", attributeNodes = @NamedAttributeNode("type")))
+
 @Entity
+@Cacheable
 public class CarRentalCompany {
 
     private static Logger logger = Logger.getLogger(CarRentalCompany.class.getName());
     
+    private static final CarAllocationStrategy DEFAULT_ALLOCATION = CarAllocation.fromSystemProperty();
+    
+    // -Drental.pricing=seasonal for seasonal and weekend rates
+    private static final PricingStrategy PRICING = "seasonal".equals(System.getProperty("rental.pricing"))
+            ? new SeasonalPricing() : new FlatPricing();
+    
     @Id
     private String name;
     
-    @OneToMany(cascade=ALL)
+    @OneToMany(mappedBy="company", cascade=ALL)
     private List<Car> cars;
     
     @OneToMany(cascade=ALL)
     private Set<CarType> carTypes = new HashSet<CarType>();
     private List<String> regions;
-
+    
+    // free cars per day for each car type name, built lazily from the loaded
+    // reservations of the cars; exact within the loaded window only
+    @Transient
+    private Map<String, DayCapacityTree> capacities;
+    
+    // free gaps of the cars for each car type name, for the allocation
+    @Transient
+    private Map<String, FreeGapIndex> freeGaps;
+    
+    @Transient
+    private List<CarType> typesByPrice;
+    
+    // lookup indexes over cars and carTypes, built lazily after loading
+    @Transient
+    private IntMap<Car> carsById;
+    
+    @Transient
+    private Map<String, List<Car>> carsByType;
+    
+    @Transient
+    private Map<String, CarType> typesByName;
+    
+    @Transient
+    private CarAllocationStrategy allocation = DEFAULT_ALLOCATION;
 	
     /***************
      * CONSTRUCTOR *
@@ -114,6 +191,7 @@ public class CarRentalCompany {
         this.cars = cars;
         setRegions(regions);
         for (Car car : cars) {
+            car.setCompany(this);
             carTypes.add(car.getType());
         }
     }
@@ -148,25 +226,81 @@ public class CarRentalCompany {
     public Collection<CarType> getAllTypes() {
         return carTypes;
     }
+    
+    public void addCarType(CarType type) {
+        carTypes.add(type);
+        if (typesByName != null) {
+            typesByName.put(type.getName(), type);
+        }
+        typesByPrice = null;
+    }
 
     public CarType getType(String carTypeName) {
-        for(CarType type:carTypes){
-            if(type.getName().equals(carTypeName))
-                return type;
+        if (typesByName == null) {
+            Map<String, CarType> types = new HashMap<String, CarType>();
+            for (CarType type : carTypes) {
+                types.put(type.getName(), type);
+            }
+            typesByName = types;
+        }
+        CarType type = typesByName.get(carTypeName);
+        if (type == null) {
+            throw new IllegalArgumentException("<" + carTypeName + "> No cartype of name " + carTypeName);
+        }
+        return type;
+    }
+
+    /**
+     * All car types of this company, cheapest first.
+     */
+    public List<CarType> getTypesByPrice() {
+        if (typesByPrice == null) {
+            List<CarType> types = new ArrayList<CarType>(carTypes);
+            Collections.sort(types, new Comparator<CarType>() {
+                @Override
+                public int compare(CarType t1, CarType t2) {
+                    return Double.compare(t1.getRentalPricePerDay(), t2.getRentalPricePerDay());
+                }
+            });
+            typesByPrice = Collections.unmodifiableList(types);
         }
-        throw new IllegalArgumentException("<" + carTypeName + "> No cartype of name " + carTypeName);
+        return typesByPrice;
     }
 
     public boolean isAvailable(String carTypeName, Date start, Date end) {
+        if(!start.before(end))
+            throw new IllegalArgumentException("Illegal given period");
+        
+        return isAvailable(carTypeName, EpochDays.of(start), EpochDays.of(end));
+    }
+
+    public boolean isAvailable(String carTypeName, int startDay, int endDay) {
         logger.log(Level.INFO, "<{0}> Checking availability for car type {1}", new Object[]{name, carTypeName});
-        return getAvailableCarTypes(start, end).contains(getType(carTypeName));
+        return hasAvailableCar(getType(carTypeName).getName(), startDay, endDay);
+    }
+    
+    private boolean hasAvailableCar(String carType, int startDay, int endDay) {
+        if (!hasCapacity(carType, startDay, endDay)) {
+            return false;
+        }
+        for (Car car : getCarsOfType(carType)) {
+            if (car.isAvailable(startDay, endDay)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public Set<CarType> getAvailableCarTypes(Date start, Date end) {
+        if(!start.before(end))
+            throw new IllegalArgumentException("Illegal given period");
+        
+        int startDay = EpochDays.of(start);
+        int endDay = EpochDays.of(end);
         Set<CarType> availableCarTypes = new HashSet<CarType>();
-        for (Car car : cars) {
-            if (car.isAvailable(start, end)) {
-                availableCarTypes.add(car.getType());
+        for (CarType type : carTypes) {
+            if (hasAvailableCar(type.getName(), startDay, endDay)) {
+                availableCarTypes.add(type);
             }
         }
         return availableCarTypes;
@@ -177,42 +311,149 @@ public class CarRentalCompany {
      *********/
     
     public Car getCar(int uid) {
-        for (Car car : cars) {
-            if (car.getId() == uid) {
-                return car;
-            }
+        if (carsById == null) {
+            indexCars();
+        }
+        Car car = carsById.get(uid);
+        if (car == null) {
+            throw new IllegalArgumentException("<" + name + "> No car with uid " + uid);
         }
-        throw new IllegalArgumentException("<" + name + "> No car with uid " + uid);
+        return car;
     }
 
     public Set<Car> getCars(CarType type) {
-        Set<Car> out = new HashSet<Car>();
-        for (Car car : cars) {
-            if (car.getType().equals(type)) {
-                out.add(car);
+        return new HashSet<Car>(getCarsOfType(type.getName()));
+    }
+    
+    public Set<Car> getCars(String type) {
+        return new HashSet<Car>(getCarsOfType(type));
+    }
+    
+    private List<Car> getCarsOfType(String type) {
+        if (carsByType == null) {
+            indexCars();
+        }
+        List<Car> out = carsByType.get(type);
+        return out == null ? Collections.<Car>emptyList() : out;
+    }
+    
+    /**
+     * Replaces the reservations known for the cars of the type by the given
+     * ones: all reservations of those cars overlapping the days from until
+     * until. Availability of the type can then be checked within that window.
+     */
+    public void loadReservations(String carType, int from, int until, Collection<Reservation> overlapping) {
+        IntMap<List<Reservation>> byCar = new IntMap<List<Reservation>>(overlapping.size());
+        for (Reservation res : overlapping) {
+            List<Reservation> ofCar = byCar.get(res.getCarId());
+            if (ofCar == null) {
+                ofCar = new ArrayList<Reservation>();
+                byCar.put(res.getCarId(), ofCar);
             }
+            ofCar.add(res);
+        }
+        for (Car car : getCarsOfType(carType)) {
+            List<Reservation> ofCar = byCar.get(car.getId());
+            car.loadReservations(from, until, ofCar == null ? Collections.<Reservation>emptyList() : ofCar);
+        }
+        if (capacities != null) {
+            capacities.remove(carType);
+        }
+        if (freeGaps != null) {
+            freeGaps.remove(carType);
+        }
+    }
+    
+    /**
+     * Loads the reservations of all cars of this company overlapping the days
+     * from until until, as for {@link #loadReservations(String, int, int, Collection)}.
+     */
+    public void loadReservations(int from, int until, Collection<Reservation> overlapping) {
+        Map<String, List<Reservation>> byType = new HashMap<String, List<Reservation>>();
+        for (Reservation res : overlapping) {
+            List<Reservation> ofType = byType.get(res.getCarType());
+            if (ofType == null) {
+                ofType = new ArrayList<Reservation>();
+                byType.put(res.getCarType(), ofType);
+            }
+            ofType.add(res);
+        }
+        for (CarType type : carTypes) {
+            List<Reservation> ofType = byType.get(type.getName());
+            loadReservations(type.getName(), from, until, ofType == null ? Collections.<Reservation>emptyList() : ofType);
         }
-        return out;
     }
     
-     public Set<Car> getCars(String type) {
-        Set<Car> out = new HashSet<Car>();
+    private void indexCars() {
+        IntMap<Car> byId = new IntMap<Car>(cars.size());
+        Map<String, List<Car>> byType = new HashMap<String, List<Car>>();
         for (Car car : cars) {
-            if (type.equals(car.getType().getName())) {
-                out.add(car);
+            byId.put(car.getId(), car);
+            List<Car> ofType = byType.get(car.getType().getName());
+            if (ofType == null) {
+                ofType = new ArrayList<Car>();
+                byType.put(car.getType().getName(), ofType);
             }
+            ofType.add(car);
         }
-        return out;
+        carsById = byId;
+        carsByType = byType;
     }
 
-    private List<Car> getAvailableCars(String carType, Date start, Date end) {
-        List<Car> availableCars = new LinkedList<Car>();
-        for (Car car : cars) {
-            if (car.getType().getName().equals(carType) && car.isAvailable(start, end)) {
-                availableCars.add(car);
+    /************
+     * CAPACITY *
+     ************/
+    
+    // false if on some day of the period no car of the type is free at all
+    private boolean hasCapacity(String carType, int startDay, int endDay) {
+        DayCapacityTree capacity = getCapacity(carType);
+        return capacity != null && capacity.minFree(startDay, endDay) > 0;
+    }
+    
+    // a tree built later starts from the cars, so only one built already needs updating
+    private DayCapacityTree getBuiltCapacity(String carType) {
+        return capacities == null ? null : capacities.get(carType);
+    }
+    
+    private DayCapacityTree getCapacity(String carType) {
+        if (capacities == null) {
+            capacities = new HashMap<String, DayCapacityTree>();
+        }
+        DayCapacityTree tree = capacities.get(carType);
+        if (tree == null) {
+            List<Car> fleet = getCarsOfType(carType);
+            if (fleet.isEmpty()) {
+                return null;
             }
+            tree = new DayCapacityTree(fleet.size());
+            for (Car car : fleet) {
+                for (Reservation reservation : car.getReservations()) {
+                    tree.book(reservation.getStartDay(), reservation.getEndDay());
+                }
+            }
+            capacities.put(carType, tree);
+        }
+        return tree;
+    }
+
+    private FreeGapIndex getFreeGaps(String carType) {
+        if (freeGaps == null) {
+            freeGaps = new HashMap<String, FreeGapIndex>();
+        }
+        FreeGapIndex gaps = freeGaps.get(carType);
+        if (gaps == null) {
+            gaps = new FreeGapIndex(getCarsOfType(carType));
+            freeGaps.put(carType, gaps);
+        }
+        return gaps;
+    }
+    
+    // the reservations of the car changed, so its gaps are recomputed if they are indexed already
+    private void refreshFreeGaps(Car car) {
+        FreeGapIndex gaps = freeGaps == null ? null : freeGaps.get(car.getType().getName());
+        if (gaps != null) {
+            gaps.refresh(car);
         }
-        return availableCars;
     }
 
     /****************
@@ -225,41 +466,64 @@ public class CarRentalCompany {
                 new Object[]{name, guest, constraints.toString()});
 
 
-        if (!this.regions.contains(constraints.getRegion()) || !isAvailable(constraints.getCarType(), constraints.getStartDate(), constraints.getEndDate())) {
+        if (!this.regions.contains(constraints.getRegion()) || !isAvailable(constraints.getCarType(), constraints.getStartDay(), constraints.getEndDay())) {
             throw new ReservationException("<" + name
                     + "> No cars available to satisfy the given constraints.");
         }
 		
         CarType type = getType(constraints.getCarType());
 
-        double price = calculateRentalPrice(type.getRentalPricePerDay(), constraints.getStartDate(), constraints.getEndDate());
+        double price = calculateRentalPrice(type, constraints.getStartDay(), constraints.getEndDay());
 
-        return new Quote(guest, constraints.getStartDate(), constraints.getEndDate(), getName(), constraints.getCarType(), price);
+        return new Quote(guest, constraints.getStartDay(), constraints.getEndDay(), getName(), constraints.getCarType(), price);
     }
 
-    // Implementation can be subject to different pricing strategies
-    private double calculateRentalPrice(double rentalPricePerDay, Date start, Date end) {
-        return rentalPricePerDay * Math.ceil((end.getTime() - start.getTime())
-                / (1000 * 60 * 60 * 24D));
+    /**
+     * Price of a rental under the pricing strategy of the agency.
+     */
+    public static double calculateRentalPrice(CarType type, int startDay, int endDay) {
+        return PRICING.calculatePrice(type, startDay, endDay);
     }
 
+    /**
+     * Sets how confirmQuote picks a car among the free ones.
+     */
+    public void setAllocationStrategy(CarAllocationStrategy allocation) {
+        this.allocation = allocation;
+    }
+    
     public Reservation confirmQuote(Quote quote) throws ReservationException {
         logger.log(Level.INFO, "<{0}> Reservation of {1}", new Object[]{name, quote.toString()});
-        List<Car> availableCars = getAvailableCars(quote.getCarType(), quote.getStartDate(), quote.getEndDate());
-        if (availableCars.isEmpty()) {
+        Car car = null;
+        if (hasCapacity(quote.getCarType(), quote.getStartDay(), quote.getEndDay())) {
+            car = allocation.allocate(getFreeGaps(quote.getCarType()), quote.getStartDay(), quote.getEndDay());
+        }
+        if (car == null) {
             throw new ReservationException("Reservation failed, all cars of type " + quote.getCarType()
                     + " are unavailable from " + quote.getStartDate() + " to " + quote.getEndDate());
         }
-        Car car = availableCars.get((int) (Math.random() * availableCars.size()));
 
         Reservation res = new Reservation(quote, car.getId());
-        car.addReservation(res);
+        if (car.addReservation(res)) {
+            DayCapacityTree capacity = getBuiltCapacity(car.getType().getName());
+            if (capacity != null) {
+                capacity.book(res.getStartDay(), res.getEndDay());
+            }
+            refreshFreeGaps(car);
+        }
         return res;
     }
 
     public void cancelReservation(Reservation res) {
         logger.log(Level.INFO, "<{0}> Cancelling reservation {1}", new Object[]{name, res.toString()});
-        getCar(res.getCarId()).removeReservation(res);
+        Car car = getCar(res.getCarId());
+        if (car.removeReservation(res)) {
+            DayCapacityTree capacity = getBuiltCapacity(car.getType().getName());
+            if (capacity != null) {
+                capacity.release(res.getStartDay(), res.getEndDay());
+            }
+            refreshFreeGaps(car);
+        }
     }
     
     public Set<Reservation> getReservationsBy(String renter) {
@@ -0,0 +1,137 @@
+package rental;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Number of reservations per car type of a company, per year in which the
+ * reservations start.
+ */
+@NamedQueries({
+    @NamedQuery(name = "incrementCarTypeStatistics", query
+            = "UPDATE CarTypeStatistics s "
+            + "SET s.reservations = s.reservations + :deltaInput "
+            + "WHERE s.company = :rentalCompanyInput AND s.carType = :carTypeInput AND s.year = :yearInput"
+    ),
+    
+    @NamedQuery(name = "getMostPopularCarTypes", query
+            = "SELECT s.carType "
+            + "FROM CarTypeStatistics s "
+            + "WHERE s.company = :rentalCompanyInput AND s.year = :yearInput AND s.reservations > 0 "
+            + "ORDER BY s.reservations DESC"
+    ),
+    
+    @NamedQuery(name = "getAllCarTypeStatistics", query
+            = "SELECT s FROM CarTypeStatistics s"
+    ),
+    
+    @NamedQuery(name = "countReservationsPerCarTypeAndDay", query
+            = "SELECT r.rentalCompany, r.carType, r.startDay, COUNT(r.reservationId) "
+            + "FROM Reservation r "
+            + "GROUP BY r.rentalCompany, r.carType, r.startDay"
+    ),
+})
+
+@Entity
+@IdClass(CarTypeStatistics.Key.class)
+@Table(indexes = @Index(name = "CARTYPESTATISTICS_COMPANY_YEAR", columnList = "COMPANY, RESERVATIONYEAR, RESERVATIONS"))
+public class CarTypeStatistics {
+
+    @Id
+    private String company;
+    
+    @Id
+    private String carType;
+    
+    @Id
+    @Column(name = "RESERVATIONYEAR")
+    private int year;
+    
+    private int reservations;
+
+    /***************
+     * CONSTRUCTOR *
+     ***************/
+    
+    public CarTypeStatistics() {}
+    
+    public CarTypeStatistics(String company, String carType, int year, int reservations) {
+        this.company = company;
+        this.carType = carType;
+        this.year = year;
+        this.reservations = reservations;
+    }
+
+    public String getCompany() {
+        return company;
+    }
+
+    public String getCarType() {
+        return carType;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getReservations() {
+        return reservations;
+    }
+    
+    public Key getKey() {
+        return new Key(company, carType, year);
+    }
+    
+    public static class Key implements Serializable {
+        
+        private String company;
+        private String carType;
+        private int year;
+
+        public Key() {}
+
+        public Key(String company, String carType, int year) {
+            this.company = company;
+            this.carType = carType;
+            this.year = year;
+        }
+
+        public String getCompany() {
+            return company;
+        }
+
+        public String getCarType() {
+            return carType;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = company == null ? 0 : company.hashCode();
+            result = 31 * result + (carType == null ? 0 : carType.hashCode());
+            return 31 * result + year;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Key other = (Key) obj;
+            return year == other.year
+                    && (company == null ? other.company == null : company.equals(other.company))
+                    && (carType == null ? other.carType == null : carType.equals(other.carType));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package rental;
+
+import java.util.Arrays;
+
+/**
+ * Number of free cars of one car type per day, as a sparse segment tree
+ * supporting range-add (booking, cancellation) and range-min (capacity check)
+ * in O(log d).
+ *
+ * Days are epoch days (see {@link EpochDays}); only the parts of the day range
+ * that were ever booked are materialized. Note that a positive minimum is a
+ * necessary but not a sufficient condition for a reservation: two different
+ * cars may each be free on part of the period only.
+ */
+public class DayCapacityTree {
+
+    private static final int LOWEST_DAY = -(1 << 19);
+    private static final int HIGHEST_DAY = (1 << 19) - 1;
+    private static final int ROOT = 0;
+    private static final int NONE = 0;
+
+    private final int capacity;
+
+    // node arrays; a node's min includes its own pending add, not those of its ancestors
+    private int[] left = new int[64];
+    private int[] right = new int[64];
+    private int[] min = new int[64];
+    private int[] pending = new int[64];
+    private int nodes = 1;
+
+    public DayCapacityTree(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of cars free on every day from startDay until endDay, both inclusive.
+     */
+    public int minFree(int startDay, int endDay) {
+        checkRange(startDay, endDay);
+        return capacity + min(ROOT, LOWEST_DAY, HIGHEST_DAY, startDay, endDay);
+    }
+
+    public void book(int startDay, int endDay) {
+        checkRange(startDay, endDay);
+        add(ROOT, LOWEST_DAY, HIGHEST_DAY, startDay, endDay, -1);
+    }
+
+    public void release(int startDay, int endDay) {
+        checkRange(startDay, endDay);
+        add(ROOT, LOWEST_DAY, HIGHEST_DAY, startDay, endDay, 1);
+    }
+
+    private int min(int node, int low, int high, int from, int to) {
+        if (from <= low && high <= to) {
+            return min[node];
+        }
+        int mid = (low + high) >> 1;
+        int result = Integer.MAX_VALUE;
+        if (from <= mid) {
+            result = left[node] == NONE ? 0 : min(left[node], low, mid, from, to);
+        }
+        if (to > mid) {
+            result = Math.min(result, right[node] == NONE ? 0 : min(right[node], mid + 1, high, from, to));
+        }
+        return pending[node] + result;
+    }
+
+    private void add(int node, int low, int high, int from, int to, int delta) {
+        if (from <= low && high <= to) {
+            min[node] += delta;
+            pending[node] += delta;
+            return;
+        }
+        int mid = (low + high) >> 1;
+        // newNode may replace the arrays, so a new child is stored only after it returns
+        if (from <= mid) {
+            if (left[node] == NONE) {
+                int child = newNode();
+                left[node] = child;
+            }
+            add(left[node], low, mid, from, to, delta);
+        }
+        if (to > mid) {
+            if (right[node] == NONE) {
+                int child = newNode();
+                right[node] = child;
+            }
+            add(right[node], mid + 1, high, from, to, delta);
+        }
+        min[node] = pending[node] + Math.min(childMin(left[node]), childMin(right[node]));
+    }
+
+    private int childMin(int child) {
+        return child == NONE ? 0 : min[child];
+    }
+
+    private int newNode() {
+        if (nodes == min.length) {
+            int length = nodes * 2;
+            left = Arrays.copyOf(left, length);
+            right = Arrays.copyOf(right, length);
+            min = Arrays.copyOf(min, length);
+            pending = Arrays.copyOf(pending, length);
+        }
+        return nodes++;
+    }
+
+    private static void checkRange(int startDay, int endDay) {
+        if (startDay > endDay || startDay < LOWEST_DAY || endDay > HIGHEST_DAY)
+            throw new IllegalArgumentException("Illegal given period");
+    }
+}
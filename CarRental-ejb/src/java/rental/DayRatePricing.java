@@ -0,0 +1,118 @@
+package rental;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pricing by a rate that varies per day. The cumulative rates of a car type
+ * are precomputed in blocks of BLOCK_DAYS days, so the price of a rental is
+ * a prefix sum subtraction per block it touches: one for nearly all rentals.
+ */
+public abstract class DayRatePricing implements PricingStrategy {
+
+    private static final int BLOCK_BITS = 12;
+    private static final int BLOCK_DAYS = 1 << BLOCK_BITS;
+
+    private final ConcurrentMap<RateKey, Rates> rates = new ConcurrentHashMap<RateKey, Rates>();
+
+    /**
+     * Rate of the car type on the given epoch day.
+     */
+    protected abstract double dayRate(CarType type, int day);
+
+    @Override
+    public double calculatePrice(CarType type, int startDay, int endDay) {
+        Rates typeRates = ratesOf(type);
+        double price = 0;
+        for (int day = startDay; day < endDay; ) {
+            int block = day >> BLOCK_BITS;
+            int first = block << BLOCK_BITS;
+            int until = (int) Math.min(endDay, (long) first + BLOCK_DAYS);
+            double[] cumulative = typeRates.block(block);
+            price += cumulative[until - first] - cumulative[day - first];
+            day = until;
+        }
+        return price;
+    }
+
+    private Rates ratesOf(CarType type) {
+        RateKey key = new RateKey(type.getName(), type.getRentalPricePerDay());
+        Rates found = rates.get(key);
+        if (found == null) {
+            rates.putIfAbsent(key, new Rates(type));
+            found = rates.get(key);
+        }
+        return found;
+    }
+
+    /**
+     * Cumulative rates of one car type, per block of days.
+     */
+    private class Rates {
+
+        private final CarType type;
+        private final ConcurrentMap<Integer, double[]> blocks = new ConcurrentHashMap<Integer, double[]>();
+        // most rentals fall into the block of the previous one
+        private volatile Block last = new Block(Integer.MIN_VALUE, null);
+
+        Rates(CarType type) {
+            this.type = type;
+        }
+
+        double[] block(int block) {
+            Block cached = last;
+            if (cached.index == block) {
+                return cached.cumulative;
+            }
+            double[] cumulative = blocks.get(block);
+            if (cumulative == null) {
+                cumulative = new double[BLOCK_DAYS + 1];
+                int first = block << BLOCK_BITS;
+                for (int i = 0; i < BLOCK_DAYS; i++) {
+                    cumulative[i + 1] = cumulative[i] + dayRate(type, first + i);
+                }
+                blocks.putIfAbsent(block, cumulative);
+            }
+            last = new Block(block, cumulative);
+            return cumulative;
+        }
+    }
+
+    private static class Block {
+
+        final int index;
+        final double[] cumulative;
+
+        Block(int index, double[] cumulative) {
+            this.index = index;
+            this.cumulative = cumulative;
+        }
+    }
+
+    // car types of different companies can share a name but not a price
+    private static class RateKey {
+
+        final String name;
+        final double pricePerDay;
+
+        RateKey(String name, double pricePerDay) {
+            this.name = name;
+            this.pricePerDay = pricePerDay;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(pricePerDay);
+            return 31 * name.hashCode() + (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RateKey))
+                return false;
+            RateKey other = (RateKey) obj;
+            return name.equals(other.name)
+                    && Double.doubleToLongBits(pricePerDay) == Double.doubleToLongBits(other.pricePerDay);
+        }
+    }
+}
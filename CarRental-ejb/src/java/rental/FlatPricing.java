@@ -0,0 +1,12 @@
+package rental;
+
+/**
+ * The rental price per day of the car type on every day.
+ */
+public class FlatPricing implements PricingStrategy {
+
+    @Override
+    public double calculatePrice(CarType type, int startDay, int endDay) {
+        return type.getRentalPricePerDay() * (endDay - startDay);
+    }
+}
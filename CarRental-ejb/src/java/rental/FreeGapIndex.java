@@ -0,0 +1,240 @@
+package rental;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Free gaps of the cars of one car type: per car, the runs of days within its
+ * loaded window on which it is not reserved. The gaps of a car do not touch,
+ * so the car is free for a period if and only if one of its gaps contains the
+ * period, and a period is matched against the gaps instead of the cars.
+ *
+ * Gaps are kept in arrays ordered by start, together with the running maximum
+ * of their ends, as in {@link ReservationIndex}: the earliest starting gap
+ * that contains a period is found with two binary searches. They are also kept
+ * in a set ordered by length, which is walked from the shortest gap that could
+ * hold a period. The index is built on the first query and a booked or
+ * cancelled car has its gaps replaced with {@link #refresh(Car)}.
+ */
+public class FreeGapIndex {
+
+    private static final Comparator<Gap> BY_START = new Comparator<Gap>() {
+        @Override
+        public int compare(Gap g1, Gap g2) {
+            int result = Integer.compare(g1.start, g2.start);
+            return result != 0 ? result : Integer.compare(g1.rank, g2.rank);
+        }
+    };
+
+    // gaps of equal length are taken in fleet order
+    private static final Comparator<Gap> BY_LENGTH = new Comparator<Gap>() {
+        @Override
+        public int compare(Gap g1, Gap g2) {
+            int result = Long.compare(g1.length(), g2.length());
+            if (result == 0) {
+                result = Integer.compare(g1.start, g2.start);
+            }
+            return result != 0 ? result : Integer.compare(g1.rank, g2.rank);
+        }
+    };
+
+    private final List<Car> cars;
+
+    // the days loaded for every car, outside of which the gaps are not known
+    private int windowStart;
+    private int windowEnd;
+
+    private Map<Car, Gap[]> gapsByCar;
+    private Map<Car, Integer> ranks;
+    private Gap[] byStart;
+    private int[] maxEnds;
+    private int size;
+    private TreeSet<Gap> byLength;
+
+    public FreeGapIndex(List<Car> cars) {
+        this.cars = cars;
+    }
+
+    public List<Car> getCars() {
+        return cars;
+    }
+
+    /**
+     * The free car whose gap around the period starts earliest, or null if no
+     * car is free for the period.
+     */
+    public Car firstFit(int startDay, int endDay) {
+        build(startDay, endDay);
+        int last = upperBound(startDay) - 1;
+        if (last < 0 || maxEnds[last] < endDay) {
+            return null;
+        }
+        // the first gap raising the running maximum to endDay ends on or after it
+        int low = 0;
+        int high = last;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxEnds[mid] >= endDay) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return byStart[low].car;
+    }
+
+    /**
+     * The free car with the shortest gap around the period, thus the fewest
+     * free days left next to it, or null if no car is free for the period.
+     */
+    public Car bestFit(int startDay, int endDay) {
+        build(startDay, endDay);
+        Gap shortest = new Gap(null, -1, startDay, endDay);
+        for (Gap gap : byLength.tailSet(shortest)) {
+            if (gap.start <= startDay && endDay <= gap.end) {
+                return gap.car;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the gaps of the car by those of its current reservations.
+     */
+    public void refresh(Car car) {
+        if (byStart == null) {
+            return;
+        }
+        int from = size;
+        for (Gap gap : gapsByCar.get(car)) {
+            int pos = indexOf(gap);
+            System.arraycopy(byStart, pos + 1, byStart, pos, size - pos - 1);
+            byStart[--size] = null;
+            byLength.remove(gap);
+            from = Math.min(from, pos);
+        }
+        Gap[] gaps = gapsOf(car, ranks.get(car));
+        for (Gap gap : gaps) {
+            from = Math.min(from, insert(gap));
+            byLength.add(gap);
+        }
+        gapsByCar.put(car, gaps);
+        updateMaxEnds(from);
+    }
+
+    private void build(int startDay, int endDay) {
+        if (byStart == null) {
+            windowStart = Integer.MIN_VALUE;
+            windowEnd = Integer.MAX_VALUE;
+            gapsByCar = new IdentityHashMap<Car, Gap[]>(cars.size());
+            ranks = new IdentityHashMap<Car, Integer>(cars.size());
+            byLength = new TreeSet<Gap>(BY_LENGTH);
+            byStart = new Gap[Math.max(cars.size() * 2, 8)];
+            for (int rank = 0; rank < cars.size(); rank++) {
+                Car car = cars.get(rank);
+                windowStart = Math.max(windowStart, car.getWindowStart());
+                windowEnd = Math.min(windowEnd, car.getWindowEnd());
+                Gap[] gaps = gapsOf(car, rank);
+                for (Gap gap : gaps) {
+                    append(gap);
+                    byLength.add(gap);
+                }
+                gapsByCar.put(car, gaps);
+                ranks.put(car, rank);
+            }
+            Arrays.sort(byStart, 0, size, BY_START);
+            maxEnds = new int[byStart.length];
+            updateMaxEnds(0);
+        }
+        if (startDay < windowStart || endDay > windowEnd) {
+            throw new IllegalStateException("Reservations of the cars are not loaded for days "
+                    + startDay + " until " + endDay);
+        }
+    }
+
+    private static Gap[] gapsOf(Car car, int rank) {
+        int[] bounds = car.getFreeGaps();
+        Gap[] gaps = new Gap[bounds.length / 2];
+        for (int i = 0; i < gaps.length; i++) {
+            gaps[i] = new Gap(car, rank, bounds[2 * i], bounds[2 * i + 1]);
+        }
+        return gaps;
+    }
+
+    private void append(Gap gap) {
+        if (size == byStart.length) {
+            byStart = Arrays.copyOf(byStart, size * 2);
+        }
+        byStart[size++] = gap;
+    }
+
+    private int insert(Gap gap) {
+        if (size == byStart.length) {
+            byStart = Arrays.copyOf(byStart, size * 2);
+            maxEnds = Arrays.copyOf(maxEnds, size * 2);
+        }
+        int pos = Arrays.binarySearch(byStart, 0, size, gap, BY_START);
+        pos = pos < 0 ? -pos - 1 : pos;
+        System.arraycopy(byStart, pos, byStart, pos + 1, size - pos);
+        byStart[pos] = gap;
+        size++;
+        return pos;
+    }
+
+    private int indexOf(Gap gap) {
+        int pos = Arrays.binarySearch(byStart, 0, size, gap, BY_START);
+        if (pos < 0 || byStart[pos] != gap) {
+            throw new IllegalStateException("Gap index of car " + gap.car.getId() + " is out of date");
+        }
+        return pos;
+    }
+
+    // index of the first gap starting strictly after the given day
+    private int upperBound(int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (byStart[mid].start <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void updateMaxEnds(int from) {
+        int max = from == 0 ? Integer.MIN_VALUE : maxEnds[from - 1];
+        for (int i = from; i < size; i++) {
+            max = Math.max(max, byStart[i].end);
+            maxEnds[i] = max;
+        }
+    }
+
+    /**
+     * Days from start until end, both inclusive, on which the car is free.
+     */
+    private static class Gap {
+
+        final Car car;
+        final int rank;
+        final int start;
+        final int end;
+
+        Gap(Car car, int rank, int start, int end) {
+            this.car = car;
+            this.rank = rank;
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return (long) end - start + 1;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package rental;
+
+/**
+ * Prices a rental of a car type.
+ */
+public interface PricingStrategy {
+
+    /**
+     * Price of renting a car of the type from startDay until endDay, charging
+     * every day from the start day up to but not including the end day.
+     */
+    double calculatePrice(CarType type, int startDay, int endDay);
+}
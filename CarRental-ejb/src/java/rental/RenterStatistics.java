@@ -0,0 +1,69 @@
+package rental;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Number of reservations per renter, kept up to date in the transactions that
+ * confirm and cancel reservations.
+ */
+@NamedQueries({
+    @NamedQuery(name = "incrementRenterStatistics", query
+            = "UPDATE RenterStatistics s "
+            + "SET s.reservations = s.reservations + :deltaInput "
+            + "WHERE s.renter = :carRenterInput"
+    ),
+    
+    @NamedQuery(name = "getMaxReservationsPerRenter", query
+            = "SELECT MAX(s.reservations) FROM RenterStatistics s"
+    ),
+    
+    @NamedQuery(name = "getRentersWithReservations", query
+            = "SELECT s.renter "
+            + "FROM RenterStatistics s "
+            + "WHERE s.reservations = :reservationsInput"
+    ),
+    
+    @NamedQuery(name = "getAllRenterStatistics", query
+            = "SELECT s FROM RenterStatistics s"
+    ),
+    
+    @NamedQuery(name = "countReservationsPerRenter", query
+            = "SELECT r.carRenter, COUNT(r.reservationId) "
+            + "FROM Reservation r "
+            + "GROUP BY r.carRenter"
+    ),
+})
+
+@Entity
+@Table(indexes = @Index(name = "RENTERSTATISTICS_COUNT", columnList = "RESERVATIONS"))
+public class RenterStatistics {
+
+    @Id
+    private String renter;
+    
+    private int reservations;
+
+    /***************
+     * CONSTRUCTOR *
+     ***************/
+    
+    public RenterStatistics() {}
+    
+    public RenterStatistics(String renter, int reservations) {
+        this.renter = renter;
+        this.reservations = reservations;
+    }
+
+    public String getRenter() {
+        return renter;
+    }
+
+    public int getReservations() {
+        return reservations;
+    }
+}
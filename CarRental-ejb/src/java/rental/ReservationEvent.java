@@ -0,0 +1,81 @@
+package rental;
+
+/**
+ * A committed change to the reservations, as appended to the reservation
+ * event log. Events carry only the ids and the period, so consumers need not
+ * load the reservation itself.
+ */
+public class ReservationEvent {
+
+    /**
+     * An archived reservation no longer takes part in availability, like a
+     * cancelled one, but still counts in the statistics.
+     */
+    public enum Kind {
+        CONFIRMED, CANCELLED, ARCHIVED
+    }
+
+    private final Kind kind;
+    private final int reservationId;
+    private final String rentalCompany;
+    private final String carType;
+    private final int carId;
+    private final int startDay;
+    private final int endDay;
+
+    public static ReservationEvent confirmed(Reservation res) {
+        return new ReservationEvent(Kind.CONFIRMED, res);
+    }
+
+    public static ReservationEvent cancelled(Reservation res) {
+        return new ReservationEvent(Kind.CANCELLED, res);
+    }
+
+    public static ReservationEvent archived(Reservation res) {
+        return new ReservationEvent(Kind.ARCHIVED, res);
+    }
+
+    private ReservationEvent(Kind kind, Reservation res) {
+        this.kind = kind;
+        this.reservationId = res.getReservationId();
+        this.rentalCompany = res.getRentalCompany();
+        this.carType = res.getCarType();
+        this.carId = res.getCarId();
+        this.startDay = res.getStartDay();
+        this.endDay = res.getEndDay();
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getReservationId() {
+        return reservationId;
+    }
+
+    public String getRentalCompany() {
+        return rentalCompany;
+    }
+
+    public String getCarType() {
+        return carType;
+    }
+
+    public int getCarId() {
+        return carId;
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    public int getEndDay() {
+        return endDay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s reservation %d of car %d (%s, %s) from day %d until %d",
+                kind, reservationId, carId, rentalCompany, carType, startDay, endDay);
+    }
+}
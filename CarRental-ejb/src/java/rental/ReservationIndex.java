@@ -0,0 +1,121 @@
+package rental;
+
+import java.util.Arrays;
+
+/**
+ * Sorted interval index over the reservation periods of a single car, in
+ * epoch days.
+ *
+ * Periods are kept in arrays ordered by start, together with the running
+ * maximum of the end points. An overlap query is a binary search for the last
+ * period starting at or before the requested end, followed by a single
+ * comparison of the running maximum with the requested start.
+ */
+public class ReservationIndex {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] starts;
+    private int[] ends;
+    private int[] maxEnds;
+    private int size;
+
+    public ReservationIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ReservationIndex(int capacity) {
+        capacity = Math.max(capacity, INITIAL_CAPACITY);
+        starts = new int[capacity];
+        ends = new int[capacity];
+        maxEnds = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Both bounds are inclusive: a period ending on the day another one starts
+     * overlaps it.
+     */
+    public boolean overlaps(int start, int end) {
+        int last = upperBound(end) - 1;
+        return last >= 0 && maxEnds[last] >= start;
+    }
+
+    /**
+     * The runs of days from from until until, both inclusive, that no period
+     * covers, in order, as pairs of their first and last day.
+     */
+    public int[] freeGaps(int from, int until) {
+        int[] gaps = new int[2 * (size + 1)];
+        int count = 0;
+        // first day not known to be covered
+        long next = from;
+        for (int i = 0; i < size && next <= until; i++) {
+            if (starts[i] > next) {
+                gaps[count++] = (int) next;
+                gaps[count++] = Math.min(starts[i] - 1, until);
+            }
+            next = Math.max(next, (long) ends[i] + 1);
+        }
+        if (next <= until) {
+            gaps[count++] = (int) next;
+            gaps[count++] = until;
+        }
+        return Arrays.copyOf(gaps, count);
+    }
+
+    public void add(int start, int end) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            maxEnds = Arrays.copyOf(maxEnds, capacity);
+        }
+        int pos = upperBound(start);
+        System.arraycopy(starts, pos, starts, pos + 1, size - pos);
+        System.arraycopy(ends, pos, ends, pos + 1, size - pos);
+        starts[pos] = start;
+        ends[pos] = end;
+        size++;
+        updateMaxEnds(pos);
+    }
+
+    public boolean remove(int start, int end) {
+        for (int i = upperBound(start - 1); i < size && starts[i] == start; i++) {
+            if (ends[i] == end) {
+                System.arraycopy(starts, i + 1, starts, i, size - i - 1);
+                System.arraycopy(ends, i + 1, ends, i, size - i - 1);
+                size--;
+                updateMaxEnds(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // index of the first period starting strictly after the given day
+    private int upperBound(int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void updateMaxEnds(int from) {
+        int max = from == 0 ? Integer.MIN_VALUE : maxEnds[from - 1];
+        for (int i = from; i < size; i++) {
+            max = Math.max(max, ends[i]);
+            maxEnds[i] = max;
+        }
+    }
+}
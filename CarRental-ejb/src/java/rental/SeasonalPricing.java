@@ -0,0 +1,44 @@
+package rental;
+
+import java.util.Arrays;
+
+/**
+ * The rental price per day of the car type, times a factor per month and a
+ * factor for Saturdays and Sundays.
+ */
+public class SeasonalPricing extends DayRatePricing {
+
+    // dearer in the summer holidays and around Christmas
+    private static final double[] DEFAULT_MONTH_FACTORS
+            = {0.9, 0.9, 1.0, 1.0, 1.0, 1.1, 1.25, 1.25, 1.0, 1.0, 0.9, 1.15};
+    private static final double DEFAULT_WEEKEND_FACTOR = 1.2;
+
+    // 1/1/1970 was a Thursday, so this shift makes Saturday 0 and Sunday 1
+    private static final int SATURDAY_OFFSET = 5;
+
+    private final double[] monthFactors;
+    private final double weekendFactor;
+
+    public SeasonalPricing() {
+        this(DEFAULT_MONTH_FACTORS, DEFAULT_WEEKEND_FACTOR);
+    }
+
+    /**
+     * @param monthFactors factors for January until December
+     * @param weekendFactor factor for Saturdays and Sundays
+     */
+    public SeasonalPricing(double[] monthFactors, double weekendFactor) {
+        if (monthFactors.length != 12) {
+            throw new IllegalArgumentException("Need a factor for each of the 12 months");
+        }
+        this.monthFactors = Arrays.copyOf(monthFactors, 12);
+        this.weekendFactor = weekendFactor;
+    }
+
+    @Override
+    protected double dayRate(CarType type, int day) {
+        double rate = type.getRentalPricePerDay() * monthFactors[EpochDays.monthOf(day)];
+        int dayOfWeek = Math.floorMod(day + SATURDAY_OFFSET, 7);
+        return dayOfWeek < 2 ? rate * weekendFactor : rate;
+    }
+}
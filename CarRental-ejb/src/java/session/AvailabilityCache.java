@@ -0,0 +1,286 @@
+package session;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Whether a car type of a company has a free car in a period, as last read
+ * from the database.
+ *
+ * Entries are evicted least recently used first once the cache is full, and
+ * expire after a time to live. A committed booking or cancellation drops
+ * exactly the entries of its company and car type whose period overlaps it.
+ * A reader takes a stamp before it queries and only stores its answer if no
+ * booking of that company and car type committed in between, so an answer
+ * read before a commit is never cached after it.
+ *
+ * Sized with -Drental.availabilityCache.size (entries, default 10000) and
+ * -Drental.availabilityCache.ttlSeconds (default 60). The counters are
+ * published as the rental:type=AvailabilityCache MXBean.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class AvailabilityCache implements AvailabilityCacheMXBean {
+
+    private static final Logger logger = Logger.getLogger(AvailabilityCache.class.getName());
+
+    private static final int MAX_SIZE = Integer.getInteger("rental.availabilityCache.size", 10000);
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("rental.availabilityCache.ttlSeconds", 60));
+
+    private final ObjectName name = objectName();
+
+    // guarded by this
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private final Map<String, Set<Key>> keysByCarType = new HashMap<String, Set<Key>>();
+    // a stamp is the sum of these counters, so it changes whenever one of them is bumped
+    private final Map<String, Long> carTypeStamps = new HashMap<String, Long>();
+    private final Map<String, Long> companyStamps = new HashMap<String, Long>();
+    private long clearStamp;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    @PostConstruct
+    void start() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Availability cache counters are not published", e);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.log(Level.FINE, "Could not unregister " + name, e);
+        }
+    }
+
+    /**
+     * The cached availability, or null if it has to be read from the database.
+     */
+    public synchronized Boolean get(String company, String carType, int startDay, int endDay) {
+        Key key = new Key(company, carType, startDay, endDay);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            remove(key);
+            evictions++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.available;
+    }
+
+    /**
+     * Stamp to take before reading availabilities of the company from the
+     * database, and to pass to {@link #put}.
+     */
+    public synchronized long stamp(String company, String carType) {
+        return valueOf(carTypeStamps, carTypeOf(company, carType)) + valueOf(companyStamps, company) + clearStamp;
+    }
+
+    /**
+     * Caches an availability, unless a booking of the company and car type
+     * committed since the stamp was taken.
+     */
+    public synchronized void put(String company, String carType, int startDay, int endDay, boolean available, long stamp) {
+        if (stamp != stamp(company, carType)) {
+            return;
+        }
+        Key key = new Key(company, carType, startDay, endDay);
+        if (entries.put(key, new Entry(available, System.nanoTime() + TTL_NANOS)) == null) {
+            Set<Key> keys = keysByCarType.get(key.carType);
+            if (keys == null) {
+                keys = new HashSet<Key>();
+                keysByCarType.put(key.carType, keys);
+            }
+            keys.add(key);
+        }
+        while (entries.size() > MAX_SIZE) {
+            remove(entries.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops the entries of the company and car type overlapping the period.
+     * Called once a booking or cancellation in that period has committed.
+     */
+    public synchronized void invalidate(String company, String carType, int startDay, int endDay) {
+        String type = carTypeOf(company, carType);
+        increment(carTypeStamps, type);
+        Set<Key> keys = keysByCarType.get(type);
+        if (keys == null) {
+            return;
+        }
+        for (Iterator<Key> it = keys.iterator(); it.hasNext(); ) {
+            Key key = it.next();
+            if (key.startDay <= endDay && key.endDay >= startDay) {
+                it.remove();
+                entries.remove(key);
+                invalidations++;
+            }
+        }
+        if (keys.isEmpty()) {
+            keysByCarType.remove(type);
+        }
+    }
+
+    /**
+     * Drops all entries of the company, e.g. after its fleet changed.
+     */
+    public synchronized void invalidate(String company) {
+        increment(companyStamps, company);
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Key key = it.next().getKey();
+            if (key.company.equals(company)) {
+                it.remove();
+                keysByCarType.remove(key.carType);
+                invalidations++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return MAX_SIZE;
+    }
+
+    @Override
+    public synchronized void clear() {
+        clearStamp++;
+        entries.clear();
+        keysByCarType.clear();
+    }
+
+    private void remove(Key key) {
+        entries.remove(key);
+        Set<Key> keys = keysByCarType.get(key.carType);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByCarType.remove(key.carType);
+            }
+        }
+    }
+
+    private static long valueOf(Map<String, Long> counters, String key) {
+        Long value = counters.get(key);
+        return value == null ? 0 : value;
+    }
+
+    private static void increment(Map<String, Long> counters, String key) {
+        counters.put(key, valueOf(counters, key) + 1);
+    }
+
+    private static String carTypeOf(String company, String carType) {
+        return company + '\u0000' + carType;
+    }
+
+    private static ObjectName objectName() {
+        try {
+            return new ObjectName("rental:type=AvailabilityCache");
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Key {
+
+        final String company;
+        final String carType;
+        final int startDay;
+        final int endDay;
+
+        Key(String company, String type, int startDay, int endDay) {
+            this.company = company;
+            this.carType = carTypeOf(company, type);
+            this.startDay = startDay;
+            this.endDay = endDay;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * carType.hashCode() + startDay) + endDay;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return startDay == other.startDay && endDay == other.endDay && carType.equals(other.carType);
+        }
+    }
+
+    private static class Entry {
+
+        final boolean available;
+        final long expiresAt;
+
+        Entry(boolean available, long expiresAt) {
+            this.available = available;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
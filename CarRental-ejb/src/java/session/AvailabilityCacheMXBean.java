@@ -0,0 +1,27 @@
+package session;
+
+/**
+ * Counters of the availability cache, to size it.
+ */
+public interface AvailabilityCacheMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * Entries dropped because the cache was full or they had expired.
+     */
+    long getEvictions();
+
+    /**
+     * Entries dropped because a booking or cancellation overlapped them.
+     */
+    long getInvalidations();
+
+    int getSize();
+
+    int getMaxSize();
+
+    void clear();
+}
@@ -0,0 +1,307 @@
+package session;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
+import javax.ejb.EJB;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
+import rental.AvailabilityView;
+import rental.CarType;
+import rental.ReservationEvent;
+
+/**
+ * Answers availability and cheapest car type queries from memory, without
+ * touching the entities.
+ *
+ * The model is loaded from the database at startup and then follows the
+ * {@link ReservationEventLog}: every query first applies the events appended
+ * since the previous one. Loading records the position in the log before
+ * reading the database, and replays the events from there, so commits during
+ * the load are not lost. A fleet import marks the model stale, which makes
+ * the next query reload it.
+ *
+ * Enabled with -Drental.readModel=true; the sessions query the database
+ * otherwise. Published as the rental:type=AvailabilityReadModel MXBean.
+ */
+@Singleton
+@Startup
+@DependsOn("ShardRouter")
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class AvailabilityReadModel implements AvailabilityReadModelMXBean {
+
+    private static final Logger logger = Logger.getLogger(AvailabilityReadModel.class.getName());
+
+    static final boolean ENABLED = Boolean.getBoolean("rental.readModel");
+
+    private static final int MAX_REPORTED_DIFFERENCES = 100;
+
+    @EJB
+    ShardRouter shards;
+
+    @EJB
+    ReservationEventLog events;
+
+    private final ObjectName name = objectName();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by lock
+    private AvailabilityView view;
+    private long appliedSequence;
+    private long rebuilds;
+    private volatile boolean stale = true;
+
+    @PostConstruct
+    void start() {
+        if (ENABLED) {
+            rebuild();
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Availability read model is not published", e);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.log(Level.FINE, "Could not unregister " + name, e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public List<CarType> getAvailableCarTypes(Collection<String> companies, int startDay, int endDay) {
+        Lock read = upToDate();
+        try {
+            return view.getAvailableCarTypes(companies, startDay, endDay);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    public CarType getCheapestCarType(Collection<String> companies, int startDay, int endDay) {
+        Lock read = upToDate();
+        try {
+            return view.getCheapestCarType(companies, startDay, endDay);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Rows of company name and car type, like the getCompaniesForCarType query.
+     */
+    public List<Object[]> getCompaniesForCarType(Collection<String> companies, String carType, int startDay, int endDay) {
+        Lock read = upToDate();
+        try {
+            return view.getCompaniesForCarType(companies, carType, startDay, endDay);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Makes the next query reload the model, after the fleets changed.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    @Override
+    public int getCars() {
+        if (!ENABLED) {
+            return 0;
+        }
+        Lock read = upToDate();
+        try {
+            return view.getNumberOfCars();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public int getReservations() {
+        if (!ENABLED) {
+            return 0;
+        }
+        Lock read = upToDate();
+        try {
+            return view.getNumberOfReservations();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public long getAppliedSequence() {
+        lock.readLock().lock();
+        try {
+            return appliedSequence;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getRebuilds() {
+        lock.readLock().lock();
+        try {
+            return rebuilds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebuild() {
+        checkEnabled();
+        lock.writeLock().lock();
+        try {
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compares the model with a fresh load from the database. Both are brought
+     * to the same position in the event log first, so only transactions that
+     * committed but had not appended their events yet can show up as
+     * differences.
+     */
+    @Override
+    public int checkConsistency() {
+        checkEnabled();
+        long sequence = events.getLastSequence();
+        AvailabilityView expected = read();
+        lock.writeLock().lock();
+        try {
+            catchUp();
+            List<ReservationEvent> later = events.readAfter(sequence);
+            if (later == null) {
+                logger.log(Level.WARNING, "Event log overran the consistency check, try again");
+                return -1;
+            }
+            for (ReservationEvent event : later) {
+                expected.apply(event);
+            }
+            List<String> differences = view.differences(expected, MAX_REPORTED_DIFFERENCES);
+            for (String difference : differences) {
+                logger.log(Level.WARNING, "Availability read model differs: {0}", difference);
+            }
+            logger.log(Level.INFO, "Availability read model checked, {0} differences", differences.size());
+            return differences.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // applies pending events under the write lock, then returns holding the read lock
+    private Lock upToDate() {
+        checkEnabled();
+        if (stale || events.getLastSequence() != getAppliedSequence()) {
+            lock.writeLock().lock();
+            try {
+                catchUp();
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } else {
+            lock.readLock().lock();
+        }
+        return lock.readLock();
+    }
+
+    private static void checkEnabled() {
+        if (!ENABLED) {
+            throw new IllegalStateException("Availability read model is disabled, see -Drental.readModel");
+        }
+    }
+
+    private void catchUp() {
+        if (stale) {
+            load();
+            return;
+        }
+        List<ReservationEvent> pending = events.readAfter(appliedSequence);
+        if (pending == null) {
+            logger.log(Level.WARNING, "Availability read model fell behind the event log, reloading");
+            load();
+            return;
+        }
+        apply(pending);
+    }
+
+    private void load() {
+        stale = false;
+        appliedSequence = events.getLastSequence();
+        view = read();
+        rebuilds++;
+        logger.log(Level.INFO, "Availability read model loaded {0} cars and {1} reservations",
+                new Object[]{view.getNumberOfCars(), view.getNumberOfReservations()});
+        List<ReservationEvent> pending = events.readAfter(appliedSequence);
+        if (pending != null) {
+            apply(pending);
+        }
+    }
+
+    private void apply(List<ReservationEvent> pending) {
+        for (ReservationEvent event : pending) {
+            view.apply(event);
+        }
+        appliedSequence += pending.size();
+    }
+
+    private AvailabilityView read() {
+        AvailabilityView fresh = new AvailabilityView();
+        for (EntityManager em : shards.all()) {
+            for (Object[] row : (List<Object[]>) em.createNamedQuery("getAllCars").getResultList()) {
+                fresh.addCar((String) row[0], (CarType) row[1], (Integer) row[2]);
+            }
+            for (Object[] row : (List<Object[]>) em.createNamedQuery("getAllReservationPeriods").getResultList()) {
+                fresh.book((Integer) row[0], (Integer) row[1], (Integer) row[2], (Integer) row[3]);
+            }
+        }
+        return fresh;
+    }
+
+    private static ObjectName objectName() {
+        try {
+            return new ObjectName("rental:type=AvailabilityReadModel");
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
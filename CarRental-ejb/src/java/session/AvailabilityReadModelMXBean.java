@@ -0,0 +1,29 @@
+package session;
+
+/**
+ * State of the availability read model, and operations to verify or rebuild
+ * it.
+ */
+public interface AvailabilityReadModelMXBean {
+
+    boolean isEnabled();
+
+    int getCars();
+
+    int getReservations();
+
+    /**
+     * Sequence number of the last reservation event applied.
+     */
+    long getAppliedSequence();
+
+    long getRebuilds();
+
+    /**
+     * @return the number of cars and reservations whose state differs from
+     * the database
+     */
+    int checkConsistency();
+
+    void rebuild();
+}
@@ -0,0 +1,97 @@
+package session;
+
+import java.util.concurrent.atomic.AtomicLong;
+import metrics.LatencyHistogram;
+
+/**
+ * Invocation count, error count, latency histogram and number of queries of a
+ * single session bean method. Recording takes no locks and does not allocate.
+ */
+public class CallMetrics implements CallMetricsMXBean {
+
+    private final String name;
+    private volatile LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong maxQueries = new AtomicLong();
+
+    public CallMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void record(long nanos, int queryCount, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        queries.addAndGet(queryCount);
+        long current;
+        while (queryCount > (current = maxQueries.get()) && !maxQueries.compareAndSet(current, queryCount)) {
+            // raised by another thread meanwhile, try again
+        }
+    }
+
+    void reset() {
+        latency = new LatencyHistogram();
+        errors.set(0);
+        queries.set(0);
+        maxQueries.set(0);
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getPercentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getPercentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getPercentile(0.999) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / 1e6;
+    }
+
+    @Override
+    public double getMeanQueries() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : (double) queries.get() / calls;
+    }
+
+    @Override
+    public long getMaxQueries() {
+        return maxQueries.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d calls, %d errors, mean %.2f ms, p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms, %.1f queries/call (max %d)",
+                name, getCalls(), getErrors(), getMeanMillis(), getP50Millis(), getP99Millis(), getP999Millis(),
+                getMaxMillis(), getMeanQueries(), getMaxQueries());
+    }
+}
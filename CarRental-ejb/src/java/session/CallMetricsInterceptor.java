@@ -0,0 +1,30 @@
+package session;
+
+import javax.ejb.EJB;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.InvocationContext;
+
+/**
+ * Records latency, outcome and number of queries of every business method
+ * call in the {@link MetricsRegistry}.
+ */
+public class CallMetricsInterceptor {
+
+    @EJB
+    MetricsRegistry registry;
+
+    @AroundInvoke
+    public Object measure(InvocationContext context) throws Exception {
+        CallMetrics metrics = registry.get(context.getTarget().getClass(), context.getMethod());
+        int queries = QueryCounter.current();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = context.proceed();
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(System.nanoTime() - start, QueryCounter.current() - queries, failed);
+        }
+    }
+}
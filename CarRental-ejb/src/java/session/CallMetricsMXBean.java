@@ -0,0 +1,25 @@
+package session;
+
+/**
+ * Statistics of a single session bean method. Latencies are in milliseconds.
+ */
+public interface CallMetricsMXBean {
+
+    long getCalls();
+
+    long getErrors();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    double getMeanQueries();
+
+    long getMaxQueries();
+}
@@ -1,45 +1,149 @@
 package session;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.Stateful;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.interceptor.Interceptors;
 import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import javax.persistence.OptimisticLockException;
+import rental.BatchResult;
 import rental.CarRentalCompany;
 import rental.CarType;
+import rental.EpochDays;
+import rental.Period;
 import rental.Quote;
 import rental.Reservation;
 import rental.ReservationConstraints;
 import rental.ReservationException;
+import rental.ReservationPage;
 
 @Stateful
+@Interceptors(CallMetricsInterceptor.class)
 public class CarRentalSession implements CarRentalSessionRemote {
 
+    private static final Logger logger = Logger.getLogger(CarRentalSession.class.getName());
+
+    // a retry re-reads the fleet, so it picks a car that is still free, and
+    // the statistics rows that a concurrent confirmation created
+    private static final int MAX_CONFIRM_ATTEMPTS = 5;
+    
+    // SQL state of a unique or primary key violation
+    private static final String DUPLICATE_KEY = "23505";
+    
+    // answer getCheapestCarType from the in-memory type index instead of the database
+    private static final boolean CHEAPEST_FROM_TYPE_INDEX = Boolean.getBoolean("rental.cheapestFromTypeIndex");
+
     private String renter;
     private List<Quote> quotes = new LinkedList<Quote>();
     
-    @PersistenceContext 
-    EntityManager em;
+    @EJB
+    ShardRouter shards;
+    
+    @EJB
+    ReservationService reservations;
+    
+    @EJB
+    RentalCatalog catalog;
+    
+    @EJB
+    ReservationHistory history;
+    
+    @EJB
+    AvailabilityCache availability;
+    
+    @EJB
+    AvailabilityReadModel readModel;
 
     @Override
     public Set<String> getAllRentalCompanies() {
-        Set<String> rentals = new HashSet<String>(em.createNamedQuery("getAllCompanies").getResultList());
-        return rentals;
+        return new HashSet<String>(catalog.getAllCompanies());
     }
     
     @Override
     public List<CarType> getAvailableCarTypes(Date start, Date end) {
-        return em.createNamedQuery("getAvailableCarTypes")
-                .setParameter("startDateInput", start)
-                .setParameter("endDateInput", end)
-                .getResultList();
+        return findAvailableCarTypes(EpochDays.of(start), EpochDays.of(end));
+    }
+    
+    @Override
+    public List<List<CarType>> getAvailableCarTypes(List<Period> periods) {
+        Map<Period, List<CarType>> availableByPeriod = new HashMap<Period, List<CarType>>();
+        List<List<CarType>> results = new ArrayList<List<CarType>>(periods.size());
+        for (Period period : periods) {
+            List<CarType> available = availableByPeriod.get(period);
+            if (available == null) {
+                available = findAvailableCarTypes(period.getStartDay(), period.getEndDay());
+                availableByPeriod.put(period, available);
+            }
+            results.add(available);
+        }
+        return results;
+    }
+    
+    /**
+     * Answers from the read model if it is enabled. Otherwise answers from the
+     * availability cache where it can, and reads the car types it misses with
+     * one query per shard.
+     */
+    private List<CarType> findAvailableCarTypes(int startDay, int endDay) {
+        if (AvailabilityReadModel.ENABLED) {
+            return readModel.getAvailableCarTypes(catalog.getAllCompanies(), startDay, endDay);
+        }
+        
+        List<CarType> available = new ArrayList<CarType>();
+        Map<String, Map<CarType, Long>> missed = new HashMap<String, Map<CarType, Long>>();
+        for (String company : catalog.getAllCompanies()) {
+            for (CarType type : catalog.getCarTypes(company)) {
+                Boolean cached = availability.get(company, type.getName(), startDay, endDay);
+                if (cached == null) {
+                    Map<CarType, Long> stamps = missed.get(company);
+                    if (stamps == null) {
+                        stamps = new HashMap<CarType, Long>();
+                        missed.put(company, stamps);
+                    }
+                    stamps.put(type, availability.stamp(company, type.getName()));
+                } else if (cached) {
+                    available.add(type);
+                }
+            }
+        }
+        if (missed.isEmpty()) {
+            return available;
+        }
+        
+        Set<List<String>> free = new HashSet<List<String>>();
+        for (Map.Entry<EntityManager, List<String>> shard : shards.byShard(missed.keySet()).entrySet()) {
+            for (Object[] row : (List<Object[]>) shard.getKey().createNamedQuery("getAvailableCarTypeNamesPerCompany")
+                    .setParameter("crcNamesInput", shard.getValue())
+                    .setParameter("startDayInput", startDay)
+                    .setParameter("endDayInput", endDay)
+                    .getResultList()) {
+                free.add(Arrays.asList((String) row[0], (String) row[1]));
+            }
+        }
+        for (Map.Entry<String, Map<CarType, Long>> company : missed.entrySet()) {
+            for (Map.Entry<CarType, Long> type : company.getValue().entrySet()) {
+                boolean isFree = free.contains(Arrays.asList(company.getKey(), type.getKey().getName()));
+                availability.put(company.getKey(), type.getKey().getName(), startDay, endDay, isFree, type.getValue());
+                if (isFree) {
+                    available.add(type.getKey());
+                }
+            }
+        }
+        return available;
     }
 
     @Override
@@ -48,20 +152,45 @@ public class CarRentalSession implements CarRentalSessionRemote {
     }
 
     @Override
-    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public List<Reservation> confirmQuotes() throws ReservationException {
-        List<Reservation> done = new LinkedList<Reservation>();
-        try {
-            for (Quote quote : quotes) {
-                Reservation res = em.find(CarRentalCompany.class, quote.getRentalCompany()).confirmQuote(quote);
-                this.em.persist(res);
-                done.add(res);  
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return reservations.confirm(quotes);
+            } catch (EJBException e) {
+                if (attempt == MAX_CONFIRM_ATTEMPTS || !isConcurrencyFailure(e)) {
+                    logger.log(Level.WARNING, "Confirming quotes failed after {0} attempts", attempt);
+                    throw e;
+                }
+                logger.log(Level.INFO, "Confirmation conflicted with a concurrent one, retrying (attempt {0})", attempt);
             }
-        } catch (Exception e) {
-            System.out.println("ROLLBACK IN PROGRESS");
-            throw new EJBException(e);
         }
-        return done;
+    }
+    
+    /**
+     * A car booked concurrently fails the version check. A first reservation
+     * of a renter, or of a car type in a year, that was confirmed concurrently
+     * fails on the primary key of the statistics row both transactions
+     * created. Other constraint violations are not retried.
+     */
+    private static boolean isConcurrencyFailure(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException) {
+                return true;
+            }
+            if (t instanceof SQLException && DUPLICATE_KEY.equals(((SQLException) t).getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public ReservationPage getReservationsBy(ReservationPage.Cursor after, int pageSize) {
+        if (renter == null) {
+            throw new IllegalStateException("name not set");
+        }
+        return history.byRenter(renter, after, pageSize);
     }
 
     @Override
@@ -74,76 +203,151 @@ public class CarRentalSession implements CarRentalSessionRemote {
 
     @Override
     public String getCheapestCarType(Date start, Date end, String region) {
-        List<CarRentalCompany> rentals = em.createNamedQuery("getAllCompaniesObjects").getResultList();
+        List<String> rentals = catalog.getCompaniesIn(region);
+        if (rentals.isEmpty()) {
+            return null;
+        }
         
-            if(region != null){
-                ArrayList<CarRentalCompany> rentalsInRegion = new ArrayList<CarRentalCompany>();
+        int startDay = EpochDays.of(start);
+        int endDay = EpochDays.of(end);
+        if (AvailabilityReadModel.ENABLED) {
+            CarType cheapest = readModel.getCheapestCarType(rentals, startDay, endDay);
+            return cheapest == null ? null : cheapest.getName();
+        }
+        if (CHEAPEST_FROM_TYPE_INDEX) {
+            return getCheapestCarTypeFromIndex(rentals, startDay, endDay);
+        }
         
-                for(CarRentalCompany company : rentals){
-                    if(company.getRegions().contains(region)) rentalsInRegion.add(company);
+        // ranked here, since the price of a period need not follow the daily rate
+        List<CarType> available = new ArrayList<CarType>();
+        for (Map.Entry<EntityManager, List<String>> shard : shards.byShard(rentals).entrySet()) {
+            available.addAll(shard.getKey().createNamedQuery("getAvailableCarTypesInCompanies")
+                    .setParameter("crcNamesInput", shard.getValue())
+                    .setParameter("startDayInput", startDay)
+                    .setParameter("endDayInput", endDay)
+                    .getResultList());
+        }
+        CarType cheapest = null;
+        double lowest = Double.MAX_VALUE;
+        for (CarType type : available) {
+            double price = CarRentalCompany.calculateRentalPrice(type, startDay, endDay);
+            if (price < lowest) {
+                cheapest = type;
+                lowest = price;
+            }
+        }
+        return cheapest == null ? null : cheapest.getName();
+    }
+    
+    // prices the types of each company, only checking availability of those cheaper than the best so far
+    private String getCheapestCarTypeFromIndex(List<String> rentals, int startDay, int endDay) {
+        CarType cheapest = null;
+        double lowest = Double.MAX_VALUE;
+        for (String name : rentals) {
+            EntityManager em = shards.forCompany(name);
+            CarRentalCompany company = ReservationWindows.findFleet(em, name);
+            ReservationWindows.load(em, company, startDay, endDay);
+            for (CarType type : company.getTypesByPrice()) {
+                double price = CarRentalCompany.calculateRentalPrice(type, startDay, endDay);
+                if (price < lowest && company.isAvailable(type.getName(), startDay, endDay)) {
+                    cheapest = type;
+                    lowest = price;
                 }
-                
-                rentals = rentalsInRegion;
+            }
         }
-        
-        String query = 
-                "SELECT car.type.name " +
-                "FROM CarRentalCompany c, IN (c.cars) car " +
-                "WHERE car.id NOT IN (" +
-                "            SELECT r.carId " +
-                "            FROM Reservation r " +
-                "            WHERE (:startDateInput BETWEEN r.startDate AND r.endDate) " +
-                "            OR (:endDateInput BETWEEN r.startDate AND r.endDate)" +
-                "            ) AND (";
-        
-            boolean addOr = false;
-            for(CarRentalCompany rental : rentals){
-                
-                if(addOr) query += " OR ";
-                
-                query += ("c.name LIKE \"" + rental.getName() + "\"");
-                
-                addOr = true;
-            }
-            
-            if(region == null) query += " TRUE ";
-            
-            query += ") ORDER BY car.type.rentalPricePerDay asc"; 
-            
-        List<String> carTypeNames = em.createQuery(query)
-                .setParameter("startDateInput", start)
-                .setParameter("endDateInput", end)
-                .getResultList();
-        return carTypeNames.get(0);
+        return cheapest == null ? null : cheapest.getName();
     }
 
     @Override
     public void createQuote(String renter, Date start, Date end, String carType, String region) throws ReservationException {
-        ReservationConstraints constraints = new ReservationConstraints(start, end, carType, region);
-        try {
-            List<CarRentalCompany> rentals = em.createNamedQuery("getAllCompaniesObjects").getResultList();
-        
-            for(CarRentalCompany company : rentals){
-                if(company.getRegions().contains(region)){
-                    
-                    List<String> result = em.createNamedQuery("getAvailableCarTypesForCompany")
-                            .setParameter("carTypeInput", carType)
-                            .setParameter("startDateInput", start)
-                            .setParameter("endDateInput", end)
-                            .setParameter("crcNameInput", company.getName())
-                            .getResultList();
-                    
-                    if(!result.isEmpty()) {
-                        Quote out = em.find(CarRentalCompany.class, company.getName()).createQuote(constraints, renter);
-                        quotes.add(out);
-                        return;
-                    }
+        quotes.add(resolveQuote(renter, new ReservationConstraints(start, end, carType, region), false));
+    }
+
+    @Override
+    public void createCheapestQuote(String renter, Date start, Date end, String carType, String region) throws ReservationException {
+        quotes.add(resolveQuote(renter, new ReservationConstraints(start, end, carType, region), true));
+    }
+    
+    @Override
+    public List<BatchResult<Quote>> createQuotes(String renter, List<ReservationConstraints> constraints) {
+        // quoting books nothing, so equal constraints share the companies found for them
+        Map<List<Object>, List<Object[]>> candidatesByConstraints = new HashMap<List<Object>, List<Object[]>>();
+        List<BatchResult<Quote>> results = new ArrayList<BatchResult<Quote>>(constraints.size());
+        for (ReservationConstraints item : constraints) {
+            List<Object> key = Arrays.<Object>asList(item.getRegion(), item.getCarType(), item.getStartDay(), item.getEndDay());
+            try {
+                List<Object[]> candidates = candidatesByConstraints.get(key);
+                if (candidates == null) {
+                    candidates = findCandidates(item);
+                    candidatesByConstraints.put(key, candidates);
                 }
+                Quote quote = chooseQuote(renter, item, candidates, false);
+                quotes.add(quote);
+                results.add(BatchResult.success(quote));
+            } catch (ReservationException e) {
+                results.add(BatchResult.<Quote>failure(e));
             }
-
-           throw new ReservationException("No available cars found for given constraints");
-        } catch(Exception e) {
+        }
+        return results;
+    }
+    
+    private Quote resolveQuote(String renter, ReservationConstraints constraints, boolean cheapest) throws ReservationException {
+        return chooseQuote(renter, constraints, findCandidates(constraints), cheapest);
+    }
+    
+    /**
+     * Finds all companies in the region that can serve the constraints, with
+     * their car type, with one query per shard or from the read model.
+     */
+    private List<Object[]> findCandidates(ReservationConstraints constraints) throws ReservationException {
+        try {
+            List<String> rentals = catalog.getCompaniesIn(constraints.getRegion());
+            if (rentals.isEmpty()) {
+                throw new ReservationException("No rental companies found in region " + constraints.getRegion());
+            }
+            // the availability of archived days is no longer known
+            if (constraints.getStartDay() < ReservationArchiver.firstOpenDay()) {
+                throw new ReservationException("No available cars found for given constraints");
+            }
+            if (AvailabilityReadModel.ENABLED) {
+                return readModel.getCompaniesForCarType(rentals, constraints.getCarType(),
+                        constraints.getStartDay(), constraints.getEndDay());
+            }
+            List<Object[]> candidates = new ArrayList<Object[]>();
+            for (Map.Entry<EntityManager, List<String>> shard : shards.byShard(rentals).entrySet()) {
+                candidates.addAll(shard.getKey().createNamedQuery("getCompaniesForCarType")
+                        .setParameter("crcNamesInput", shard.getValue())
+                        .setParameter("carTypeInput", constraints.getCarType())
+                        .setParameter("startDayInput", constraints.getStartDay())
+                        .setParameter("endDayInput", constraints.getEndDay())
+                        .getResultList());
+            }
+            return candidates;
+        } catch (ReservationException e) {
+            throw e;
+        } catch (Exception e) {
             throw new ReservationException(e);
         }
     }
+    
+    // quotes the first, or the cheapest, of the candidate companies
+    private Quote chooseQuote(String renter, ReservationConstraints constraints, List<Object[]> candidates, boolean cheapest) throws ReservationException {
+        String chosen = null;
+        double lowest = Double.MAX_VALUE;
+        for (Object[] candidate : candidates) {
+            double price = CarRentalCompany.calculateRentalPrice((CarType) candidate[1], constraints.getStartDay(), constraints.getEndDay());
+            if (price < lowest) {
+                chosen = (String) candidate[0];
+                lowest = price;
+            }
+            if (!cheapest) {
+                break;
+            }
+        }
+        if (chosen == null) {
+            throw new ReservationException("No available cars found for given constraints");
+        }
+        
+        return new Quote(renter, constraints.getStartDay(), constraints.getEndDay(), chosen, constraints.getCarType(), lowest);
+    }
 }
\ No newline at end of file
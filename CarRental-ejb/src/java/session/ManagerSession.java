@@ -3,35 +3,65 @@ package session;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
 import javax.annotation.security.RolesAllowed;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.interceptor.Interceptors;
 import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import rental.Car;
 import rental.CarRentalCompany;
 import rental.CarType;
-import rental.Reservation;
+import rental.RenterStatistics;
+import rental.ReservationException;
+import rental.ReservationPage;
 
 @Stateless
+@Interceptors(CallMetricsInterceptor.class)
 public class ManagerSession implements ManagerSessionRemote {
     
-@PersistenceContext EntityManager em;    
+    // cars persisted between two flushes of the persistence context during an import
+    private static final int IMPORT_CHUNK_SIZE = 500;
+    
+    @EJB ShardRouter shards;
+
+    @Resource TransactionSynchronizationRegistry transactions;
+    
+    @Resource SessionContext context;
+    
+    @EJB RentalCatalog catalog;
+    
+    @EJB ReservationService reservations;
+    
+    @EJB ReservationStatistics statistics;
+    
+    @EJB ReservationHistory history;
+    
+    @EJB AvailabilityCache availability;
+    
+    @EJB AvailabilityReadModel readModel;
+    
+    @EJB ReservationArchiver archiver;
     
     @Override
     @RolesAllowed("Manager")
     public Set<CarType> getCarTypes(String company) {
         try {
-            return new HashSet<CarType>(em.find(CarRentalCompany.class, company).getAllTypes());
+            return new HashSet<CarType>(catalog.getCarTypes(company));
         } catch (IllegalArgumentException ex) {
             Logger.getLogger(ManagerSession.class.getName()).log(Level.SEVERE, null, ex);
             return null;
@@ -41,81 +71,80 @@ public class ManagerSession implements ManagerSessionRemote {
     @Override
     @RolesAllowed("Manager")
     public Set<Integer> getCarIds(String company, String type) {
-        Set<Integer> out = new HashSet<Integer>();
-        try {
-            for(Car c: em.find(CarRentalCompany.class, company).getCars(type)){
-                out.add(c.getId());
-            }
-        } catch (IllegalArgumentException ex) {
-            Logger.getLogger(ManagerSession.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
-        }
-        return out;
+        return new HashSet<Integer>(shards.forCompany(company).createNamedQuery("getCarIdsForCarType")
+                .setParameter("rentalCompanyInput", company)
+                .setParameter("carTypeInput", type)
+                .getResultList());
     }
 
     @Override
     @RolesAllowed("Manager")
     public int getNumberOfReservations(String company, String type, int id) {
-        try {
-            return em.find(CarRentalCompany.class, company).getCar(id).getReservations().size();
-        } catch (IllegalArgumentException ex) {
-            Logger.getLogger(ManagerSession.class.getName()).log(Level.SEVERE, null, ex);
-            return 0;
+        EntityManager em = shards.forCompany(company);
+        long count = 0;
+        for (String query : Arrays.asList("getNumberOfReservationsForCar", "getNumberOfArchivedReservationsForCar")) {
+            count += (Long) em.createNamedQuery(query)
+                    .setParameter("rentalCompanyInput", company)
+                    .setParameter("carIdInput", id)
+                    .getSingleResult();
         }
+        return Math.toIntExact(count);
     }
 
     @Override
     @RolesAllowed("Manager")
     public int getNumberOfReservations(String company, String type) {
-        Set<Reservation> out = new HashSet<Reservation>();
-        try {
-            for(Car c: em.find(CarRentalCompany.class, company).getCars(type)){
-                out.addAll(c.getReservations());
-            }
-        } catch (IllegalArgumentException ex) {
-            Logger.getLogger(ManagerSession.class.getName()).log(Level.SEVERE, null, ex);
-            return 0;
-        }
-        return out.size();
+        return getNumberOfReservationsForCarType(company, type);
     }
 
     @Override
     @RolesAllowed("Manager")
     public void persistRental(String datafile) {
         // Should the csv be stored locally, or at the server side? 
+        // the lines read before an error are persisted already, so nothing of the file is committed
         try {
-            CrcData data = loadData(datafile);
-            CarRentalCompany company = new CarRentalCompany(data.name, data.regions, data.cars);
-            em.persist(company);
-            Logger.getLogger(ManagerSession.class.getName()).log(Level.INFO, "Loaded {0} from file {1}", new Object[]{data.name, datafile});
+            importRental(datafile);
         } catch (NumberFormatException ex) {
             Logger.getLogger(ManagerSession.class.getName()).log(Level.SEVERE, "bad file", ex);
+            context.setRollbackOnly();
         } catch (IOException ex) {
             Logger.getLogger(ManagerSession.class.getName()).log(Level.SEVERE, null, ex);
+            context.setRollbackOnly();
         }
 
     }
 
-    private CrcData loadData(String datafile)
+    /**
+     * Streams the csv into the database: cars are persisted as they are read
+     * and the persistence context is flushed and cleared every
+     * IMPORT_CHUNK_SIZE cars, so memory use does not depend on the fleet size.
+     * The caller rolls back the transaction if the file turns out to be bad.
+     */
+    private void importRental(String datafile)
             throws NumberFormatException, IOException {
 
-        CrcData out = new CrcData();
+        long started = System.nanoTime();
         StringTokenizer csvReader;
-        int nextuid = 0;
+        String name = null;
+        List<String> regions = null;
+        final List<CarType> types = new ArrayList<CarType>();
+        int nbOfCars = 0;
+        EntityManager em = null;
        
         //open file from jar
         BufferedReader in = new BufferedReader(new InputStreamReader(ManagerSession.class.getClassLoader().getResourceAsStream(datafile)));
         
         try {
-            while (in.ready()) {
-                String line = in.readLine();
-                
+            String line;
+            while ((line = in.readLine()) != null) {
                 if (line.startsWith("#")) {
                     // comment -> skip					
                 } else if (line.startsWith("-")) {
                     csvReader = new StringTokenizer(line.substring(1), ",");
-                    out.name = csvReader.nextToken();
-                    out.regions = Arrays.asList(csvReader.nextToken().split(":"));
+                    name = csvReader.nextToken();
+                    regions = Arrays.asList(csvReader.nextToken().split(":"));
+                    em = shards.forCompany(name);
+                    em.persist(new CarRentalCompany(name, regions, new ArrayList<Car>()));
                 } else {
                     csvReader = new StringTokenizer(line, ",");
                     //create new car type from first 5 fields
@@ -124,80 +153,166 @@ public class ManagerSession implements ManagerSessionRemote {
                             Float.parseFloat(csvReader.nextToken()),
                             Double.parseDouble(csvReader.nextToken()),
                             Boolean.parseBoolean(csvReader.nextToken()));
+                    CarRentalCompany company = em.find(CarRentalCompany.class, name);
+                    em.persist(type);
+                    company.addCarType(type);
+                    types.add(type);
                     //create N new cars with given type, where N is the 5th field
                     for (int i = Integer.parseInt(csvReader.nextToken()); i > 0; i--) {
-                        out.cars.add(new Car(nextuid++, type));
+                        em.persist(new Car(company, type));
+                        if (++nbOfCars % IMPORT_CHUNK_SIZE == 0) {
+                            em.flush();
+                            em.clear();
+                            company = em.find(CarRentalCompany.class, name);
+                            type = em.find(CarType.class, type.getId());
+                        }
                     }        
                 }
             } 
+            if (em != null) {
+                em.flush();
+                em.clear();
+            }
         } finally {
             in.close();
         }
 
-        return out;
+        long millis = Math.max(1, (System.nanoTime() - started) / 1000000);
+        Logger.getLogger(ManagerSession.class.getName()).log(Level.INFO, "Loaded {0} from file {1}: {2} cars in {3} ms ({4} cars/s)",
+                new Object[]{name, datafile, nbOfCars, millis, nbOfCars * 1000L / millis});
+
+        // sessions only see the new company once it is committed
+        final String company = name;
+        final List<String> companyRegions = regions;
+        final EntityManager shard = em;
+        transactions.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {}
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    // the cached company was cleared from the context before its cars were added
+                    shard.getEntityManagerFactory().getCache().evict(CarRentalCompany.class, company);
+                    catalog.register(company, companyRegions, types);
+                    availability.invalidate(company);
+                    readModel.invalidate();
+                }
+            }
+        });
     }
 
     @Override
     @RolesAllowed("Manager")
     public Set<String> getBestClients() {
-        // JDBC Does not allow subquery in FROM clause
-        Long maxReservations = (Long) em.createNamedQuery("getNumberOfReservations").getResultList().get(0);
+        if (shards.isSharded()) {
+            return getBestClientsOverShards();
+        }
+        EntityManager em = shards.all().get(0);
+        Integer maxReservations = (Integer) em.createNamedQuery("getMaxReservationsPerRenter").getSingleResult();
+        if (maxReservations == null || maxReservations == 0) {
+            return new HashSet<String>();
+        }
         
-        return new HashSet<String>(em.createNamedQuery("getClientsForNumberOfReservations")
-                .setParameter("maxReservations", maxReservations)
+        return new HashSet<String>(em.createNamedQuery("getRentersWithReservations")
+                .setParameter("reservationsInput", maxReservations)
                 .getResultList());
     }
 
+    // a renter's counts are spread over the shards of the companies rented at, so they are summed here
+    private Set<String> getBestClientsOverShards() {
+        Map<String, Integer> reservationsPerRenter = new HashMap<String, Integer>();
+        for (EntityManager em : shards.all()) {
+            for (RenterStatistics statistics : (List<RenterStatistics>) em.createNamedQuery("getAllRenterStatistics").getResultList()) {
+                Integer count = reservationsPerRenter.get(statistics.getRenter());
+                reservationsPerRenter.put(statistics.getRenter(), (count == null ? 0 : count) + statistics.getReservations());
+            }
+        }
+        int maxReservations = 0;
+        Set<String> best = new HashSet<String>();
+        for (Map.Entry<String, Integer> renter : reservationsPerRenter.entrySet()) {
+            if (renter.getValue() > maxReservations) {
+                maxReservations = renter.getValue();
+                best.clear();
+            }
+            if (renter.getValue() == maxReservations && maxReservations > 0) {
+                best.add(renter.getKey());
+            }
+        }
+        return best;
+    }
+
     @Override
     @RolesAllowed("Manager")
     public CarType getMostPopularCarTypeIn(String carRentalCompanyName, int year) {
-        Long maxReservations = (Long) em.createNamedQuery("getNumberOfReservationsForCompany")
-                .setParameter("rentalCompanyInput", carRentalCompanyName)
-                .setParameter("yearInput", year)
-                .getResultList().get(0);
-        
-        String carTypeString = (String) em.createNamedQuery("getCarTypeForNumberOfReservationsForCompany")
+        List<String> carTypes = shards.forCompany(carRentalCompanyName).createNamedQuery("getMostPopularCarTypes")
                 .setParameter("rentalCompanyInput", carRentalCompanyName)
                 .setParameter("yearInput", year)
-                .setParameter("maxReservations", maxReservations)
-                .getResultList().get(0);
+                .setMaxResults(1)
+                .getResultList();
+        if (carTypes.isEmpty()) {
+            return null;
+        }
         
-       int carTypeId = (int) em.createQuery("SELECT t.id "
-                                              + "FROM CarRentalCompany crc, IN (crc.carTypes) t "
-                                              + "WHERE crc.name LIKE :rentalCompanyInput AND t.name LIKE :carTypeInput")
-               .setParameter("rentalCompanyInput", carRentalCompanyName)
-               .setParameter("carTypeInput", carTypeString)
-               .getResultList().get(0);
-              
-        return em.find(CarType.class, carTypeId);
+        for (CarType type : catalog.getCarTypes(carRentalCompanyName)) {
+            if (type.getName().equals(carTypes.get(0))) {
+                return type;
+            }
+        }
+        return null;
     }
 
     @Override
     public int getNumberOfReservationsBy(String clientName) {
-         List<Long> resultList = em.createNamedQuery("getNumberOfReservationsByClient")
-                .setParameter("carRenterInput", clientName)
-                .getResultList();
-        
-         
-        if(resultList.isEmpty()) return 0;
-        return Math.toIntExact(resultList.get(0));
+        int reservations = 0;
+        for (EntityManager em : shards.all()) {
+            RenterStatistics statistics = em.find(RenterStatistics.class, clientName);
+            reservations += statistics == null ? 0 : statistics.getReservations();
+        }
+        return reservations;
+    }
+
+    @Override
+    @RolesAllowed("Manager")
+    public void cancelReservation(int reservationId) throws ReservationException {
+        reservations.cancel(reservationId);
+    }
+
+    @Override
+    @RolesAllowed("Manager")
+    public int rebuildStatistics() {
+        return statistics.rebuild();
+    }
+
+    @Override
+    @RolesAllowed("Manager")
+    public int archiveReservations() {
+        return archiver.archive();
     }
 
     @Override
     @RolesAllowed("Manager")
     public int getNumberOfReservationsForCarType(String carRentalName, String carType) {
-        List<Long> resultList = em.createNamedQuery("getNumberOfReservationsForCarType")
-                .setParameter("rentalCompanyInput", carRentalName)
-                .setParameter("carTypeInput", carType)
-                .getResultList();
-        
-        if(resultList.isEmpty()) return 0;
-        return Math.toIntExact(resultList.get(0));
+        EntityManager em = shards.forCompany(carRentalName);
+        long count = 0;
+        for (String query : Arrays.asList("getNumberOfReservationsForCarType", "getNumberOfArchivedReservationsForCarType")) {
+            count += (Long) em.createNamedQuery(query)
+                    .setParameter("rentalCompanyInput", carRentalName)
+                    .setParameter("carTypeInput", carType)
+                    .getSingleResult();
+        }
+        return Math.toIntExact(count);
     }
-    
-    static class CrcData {
-            public List<Car> cars = new LinkedList<Car>();
-            public String name;
-            public List<String> regions =  new LinkedList<String>();
+
+    @Override
+    @RolesAllowed("Manager")
+    public ReservationPage getReservationsBy(String renter, ReservationPage.Cursor after, int pageSize) {
+        return history.byRenter(renter, after, pageSize);
+    }
+
+    @Override
+    @RolesAllowed("Manager")
+    public ReservationPage getReservationsAt(String company, ReservationPage.Cursor after, int pageSize) {
+        return history.atCompany(company, after, pageSize);
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package session;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the session bean methods, published on the platform MBean
+ * server: one rental:type=SessionMethod bean per method, registered on its
+ * first call, and a rental:type=SessionMetrics bean to dump or reset them.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class MetricsRegistry implements SessionMetricsMXBean {
+
+    private static final Logger logger = Logger.getLogger(MetricsRegistry.class.getName());
+
+    private static final String DOMAIN = "rental";
+
+    private final ConcurrentMap<Method, CallMetrics> metrics = new ConcurrentHashMap<Method, CallMetrics>();
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    @PostConstruct
+    void start() {
+        try {
+            register(new ObjectName(DOMAIN + ":type=SessionMetrics"), this);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Session metrics are not published", e);
+        }
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.log(Level.FINE, "Could not unregister " + name, e);
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Metrics of the given method, created on its first call.
+     */
+    public CallMetrics get(Class<?> bean, Method method) {
+        CallMetrics found = metrics.get(method);
+        if (found != null) {
+            return found;
+        }
+        String beanName = bean.getSimpleName();
+        CallMetrics created = new CallMetrics(beanName + "." + method.getName());
+        found = metrics.putIfAbsent(method, created);
+        if (found != null) {
+            return found;
+        }
+        try {
+            register(new ObjectName(DOMAIN + ":type=SessionMethod,bean=" + beanName
+                    + ",method=" + ObjectName.quote(signature(method))), created);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Metrics of " + created.getName() + " are not published", e);
+        }
+        return created;
+    }
+
+    @Override
+    public void dumpToLog() {
+        StringBuilder dump = new StringBuilder("Session bean metrics:");
+        for (CallMetrics method : metrics.values()) {
+            dump.append("\n  ").append(method);
+        }
+        logger.info(dump.toString());
+    }
+
+    @Override
+    public void reset() {
+        for (CallMetrics method : metrics.values()) {
+            method.reset();
+        }
+    }
+
+    private synchronized void register(ObjectName name, Object mbean) throws JMException {
+        if (server.isRegistered(name)) {
+            // left behind by an earlier deployment
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+        registered.add(name);
+    }
+
+    private static String signature(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameters = method.getParameterTypes();
+        for (int i = 0; i < parameters.length; i++) {
+            signature.append(i == 0 ? "" : ",").append(parameters[i].getSimpleName());
+        }
+        return signature.append(')').toString();
+    }
+}
@@ -0,0 +1,32 @@
+package session;
+
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+/**
+ * Counts the queries EclipseLink executes on the current thread, including
+ * the ones answered from the cache. Registered on the persistence unit with
+ * the eclipselink.session-event-listener property.
+ */
+public class QueryCounter extends SessionEventAdapter {
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * Number of queries executed on this thread so far; only differences
+     * between two calls are meaningful.
+     */
+    static int current() {
+        return COUNT.get()[0];
+    }
+
+    @Override
+    public void preExecuteQuery(SessionEvent event) {
+        COUNT.get()[0]++;
+    }
+}
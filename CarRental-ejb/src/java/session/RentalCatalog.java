@@ -0,0 +1,126 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import rental.CarRentalCompany;
+import rental.CarType;
+
+/**
+ * Read-only view on the rental companies: which companies serve a region and
+ * which car types they rent out. The view is an immutable snapshot that is
+ * replaced as a whole when a company is added, so lookups take no locks and
+ * never touch the persistence context.
+ */
+@Singleton
+@Startup
+@DependsOn("ShardRouter")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class RentalCatalog {
+
+    @EJB
+    ShardRouter shards;
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    @PostConstruct
+    void load() {
+        Snapshot loaded = new Snapshot();
+        for (EntityManager em : shards.all()) {
+            for (CarRentalCompany company : (List<CarRentalCompany>) em.createNamedQuery("getAllCompaniesObjects").getResultList()) {
+                loaded = loaded.with(company.getName(), company.getRegions(), company.getAllTypes());
+            }
+        }
+        snapshot = loaded;
+    }
+
+    /**
+     * Adds (or replaces) a company. Called once the company has been committed.
+     */
+    public synchronized void register(String company, List<String> regions, Collection<CarType> carTypes) {
+        snapshot = snapshot.with(company, regions, carTypes);
+    }
+
+    public Set<String> getAllCompanies() {
+        return snapshot.carTypes.keySet();
+    }
+
+    /**
+     * Names of the companies serving the region, or of all companies if the
+     * region is null.
+     */
+    public List<String> getCompaniesIn(String region) {
+        Snapshot current = snapshot;
+        if (region == null) {
+            return new ArrayList<String>(current.carTypes.keySet());
+        }
+        List<String> companies = current.companiesByRegion.get(region);
+        return companies == null ? Collections.<String>emptyList() : companies;
+    }
+
+    public Set<CarType> getCarTypes(String company) {
+        Set<CarType> types = snapshot.carTypes.get(company);
+        if (types == null) {
+            throw new IllegalArgumentException("<" + company + "> No such company");
+        }
+        return types;
+    }
+
+    private static class Snapshot {
+
+        final Map<String, List<String>> companiesByRegion;
+        final Map<String, Set<CarType>> carTypes;
+
+        Snapshot() {
+            this(Collections.<String, List<String>>emptyMap(), Collections.<String, Set<CarType>>emptyMap());
+        }
+
+        Snapshot(Map<String, List<String>> companiesByRegion, Map<String, Set<CarType>> carTypes) {
+            this.companiesByRegion = companiesByRegion;
+            this.carTypes = carTypes;
+        }
+
+        Snapshot with(String company, List<String> regions, Collection<CarType> types) {
+            Map<String, List<String>> byRegion = new HashMap<String, List<String>>();
+            for (Map.Entry<String, List<String>> entry : companiesByRegion.entrySet()) {
+                List<String> companies = new ArrayList<String>(entry.getValue());
+                companies.remove(company);
+                if (!companies.isEmpty()) {
+                    byRegion.put(entry.getKey(), companies);
+                }
+            }
+            for (String region : regions) {
+                List<String> companies = byRegion.get(region);
+                if (companies == null) {
+                    companies = new ArrayList<String>();
+                    byRegion.put(region, companies);
+                }
+                companies.add(company);
+            }
+            for (Map.Entry<String, List<String>> entry : byRegion.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+
+            Map<String, Set<CarType>> typesByCompany = new HashMap<String, Set<CarType>>(carTypes);
+            typesByCompany.put(company, Collections.unmodifiableSet(new HashSet<CarType>(types)));
+
+            return new Snapshot(Collections.unmodifiableMap(byRegion), Collections.unmodifiableMap(typesByCompany));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Schedule;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import rental.ArchivedReservation;
+import rental.EpochDays;
+import rental.Reservation;
+import rental.ReservationEvent;
+
+/**
+ * Moves the reservations that ended more than -Drental.archive.retentionDays
+ * days ago into the archive, every night. Archiving is off unless the
+ * retention is set.
+ *
+ * Reservations are moved in batches of -Drental.archive.batchSize (default
+ * 500), each committed in a transaction of its own, so the job never holds
+ * many locks or a large persistence context. The days before the cutoff are
+ * closed for booking, since their availability is no longer checked.
+ */
+@Stateless
+public class ReservationArchiver {
+
+    private static final Logger logger = Logger.getLogger(ReservationArchiver.class.getName());
+
+    private static final int RETENTION_DAYS = Integer.getInteger("rental.archive.retentionDays", -1);
+    private static final int BATCH_SIZE = Integer.getInteger("rental.archive.batchSize", 500);
+
+    @Resource
+    SessionContext context;
+
+    @Resource
+    TransactionSynchronizationRegistry transactions;
+
+    @EJB
+    ShardRouter shards;
+
+    @EJB
+    ReservationEventLog events;
+
+    @EJB
+    AvailabilityCache availability;
+
+    /**
+     * First day that can still be booked, or Integer.MIN_VALUE if archiving
+     * is off.
+     */
+    static int firstOpenDay() {
+        return RETENTION_DAYS < 0 ? Integer.MIN_VALUE : EpochDays.of(new Date()) - RETENTION_DAYS;
+    }
+
+    @Schedule(hour = "3", minute = "30", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void archiveNightly() {
+        if (RETENTION_DAYS >= 0) {
+            archive();
+        }
+    }
+
+    /**
+     * Archives all reservations that ended before the first open day.
+     *
+     * @return the number of reservations archived
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int archive() {
+        int cutoffDay = firstOpenDay();
+        // batches go through the container, so each one gets its own transaction
+        ReservationArchiver self = context.getBusinessObject(ReservationArchiver.class);
+        long started = System.nanoTime();
+        int archived = 0;
+        for (int shard = 0; shard < shards.all().size(); shard++) {
+            int moved;
+            do {
+                moved = self.archiveBatch(shard, cutoffDay);
+                archived += moved;
+            } while (moved == BATCH_SIZE);
+        }
+        logger.log(Level.INFO, "Archived {0} reservations that ended before day {1} in {2} ms",
+                new Object[]{archived, cutoffDay, (System.nanoTime() - started) / 1000000});
+        return archived;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int archiveBatch(int shard, int cutoffDay) {
+        EntityManager em = shards.all().get(shard);
+        List<Reservation> batch = em.createNamedQuery("getReservationsToArchive", Reservation.class)
+                .setParameter("cutoffDayInput", cutoffDay)
+                .setMaxResults(BATCH_SIZE)
+                .getResultList();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Integer> ids = new ArrayList<Integer>(batch.size());
+        for (Reservation res : batch) {
+            em.persist(new ArchivedReservation(res));
+            ids.add(res.getReservationId());
+        }
+        em.createNamedQuery("deleteReservationsById")
+                .setParameter("reservationIdsInput", ids)
+                .executeUpdate();
+        publishOnCommit(batch);
+        return batch.size();
+    }
+
+    private void publishOnCommit(final List<Reservation> archived) {
+        transactions.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {}
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    Set<String> companies = new HashSet<String>();
+                    List<ReservationEvent> committed = new ArrayList<ReservationEvent>(archived.size());
+                    for (Reservation res : archived) {
+                        companies.add(res.getRentalCompany());
+                        committed.add(ReservationEvent.archived(res));
+                    }
+                    for (String company : companies) {
+                        availability.invalidate(company);
+                    }
+                    events.append(committed);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import rental.ReservationEvent;
+
+/**
+ * In-process log of the committed reservation events, numbered from 1 in the
+ * order they were appended.
+ *
+ * The log keeps the most recent events only (-Drental.eventLog.capacity,
+ * default 65536). A consumer that fell further behind finds the events it
+ * missed overwritten and has to rebuild its state from the database.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class ReservationEventLog {
+
+    private static final int CAPACITY = Integer.getInteger("rental.eventLog.capacity", 65536);
+
+    // guarded by this; event n is kept at index n % CAPACITY
+    private final ReservationEvent[] events = new ReservationEvent[CAPACITY];
+    private long lastSequence;
+
+    public synchronized void append(List<ReservationEvent> batch) {
+        for (ReservationEvent event : batch) {
+            lastSequence++;
+            events[(int) (lastSequence % CAPACITY)] = event;
+        }
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * The events appended after the given sequence number, or null if some of
+     * them were overwritten already.
+     */
+    public synchronized List<ReservationEvent> readAfter(long sequence) {
+        if (sequence >= lastSequence) {
+            return Collections.emptyList();
+        }
+        if (lastSequence - sequence > CAPACITY) {
+            return null;
+        }
+        List<ReservationEvent> result = new ArrayList<ReservationEvent>((int) (lastSequence - sequence));
+        for (long n = sequence + 1; n <= lastSequence; n++) {
+            result.add(events[(int) (n % CAPACITY)]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.persistence.EntityManager;
+import rental.ArchivedReservation;
+import rental.Reservation;
+import rental.ReservationPage;
+import rental.ReservationPage.Cursor;
+
+/**
+ * Reservation histories of renters and companies, read a page at a time with
+ * keyset pagination on (start day, reservation id), so neither the server
+ * nor the response ever holds a full history. A renter may have rented at
+ * companies in several shards; every shard is asked for a page then, and the
+ * pages are merged, as are the pages of the live and the archived
+ * reservations.
+ */
+@Stateless
+public class ReservationHistory {
+
+    // larger requests are cut down to this many reservations per page
+    static final int MAX_PAGE_SIZE = 500;
+
+    private static final Cursor FIRST = new Cursor(Integer.MIN_VALUE, Integer.MIN_VALUE);
+
+    private static final Comparator<Reservation> BY_CURSOR = new Comparator<Reservation>() {
+        @Override
+        public int compare(Reservation r1, Reservation r2) {
+            int result = Integer.compare(r1.getStartDay(), r2.getStartDay());
+            return result != 0 ? result : Integer.compare(r1.getReservationId(), r2.getReservationId());
+        }
+    };
+
+    @EJB
+    ShardRouter shards;
+
+    public ReservationPage byRenter(String renter, Cursor after, int pageSize) {
+        return page(shards.all(), "getReservationsByRenterPage", "getArchivedReservationsByRenterPage",
+                "carRenterInput", renter, after, pageSize);
+    }
+
+    public ReservationPage atCompany(String company, Cursor after, int pageSize) {
+        return page(Collections.singletonList(shards.forCompany(company)),
+                "getReservationsAtCompanyPage", "getArchivedReservationsAtCompanyPage",
+                "rentalCompanyInput", company, after, pageSize);
+    }
+
+    private ReservationPage page(List<EntityManager> managers, String query, String archiveQuery,
+            String parameter, String value, Cursor after, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        int size = Math.min(pageSize, MAX_PAGE_SIZE);
+        Cursor from = after == null ? FIRST : after;
+        // one more than asked tells whether there is a next page
+        List<Reservation> reservations = new ArrayList<Reservation>();
+        for (EntityManager em : managers) {
+            reservations.addAll(em.createNamedQuery(query, Reservation.class)
+                    .setParameter(parameter, value)
+                    .setParameter("startDayInput", from.getStartDay())
+                    .setParameter("reservationIdInput", from.getReservationId())
+                    .setMaxResults(size + 1)
+                    .getResultList());
+            for (ArchivedReservation archived : em.createNamedQuery(archiveQuery, ArchivedReservation.class)
+                    .setParameter(parameter, value)
+                    .setParameter("startDayInput", from.getStartDay())
+                    .setParameter("reservationIdInput", from.getReservationId())
+                    .setMaxResults(size + 1)
+                    .getResultList()) {
+                reservations.add(archived.toReservation());
+            }
+        }
+        Collections.sort(reservations, BY_CURSOR);
+        if (reservations.size() > size + 1) {
+            reservations = reservations.subList(0, size + 1);
+        }
+        if (reservations.size() <= size) {
+            return new ReservationPage(reservations, null);
+        }
+        List<Reservation> page = reservations.subList(0, size);
+        return new ReservationPage(new ArrayList<Reservation>(page), Cursor.after(page.get(size - 1)));
+    }
+}
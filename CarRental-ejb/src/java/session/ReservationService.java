@@ -0,0 +1,191 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import rental.Car;
+import rental.CarRentalCompany;
+import rental.EpochDays;
+import rental.Quote;
+import rental.Reservation;
+import rental.ReservationEvent;
+import rental.ReservationException;
+
+/**
+ * Confirms a batch of quotes in a transaction of its own, so the calling
+ * session can retry the whole batch when another session booked one of the
+ * chosen cars first. Every quote is confirmed in the shard of its company, so
+ * a batch spanning several shards commits in all of them at once.
+ */
+@Stateless
+public class ReservationService {
+
+    private static final Logger logger = Logger.getLogger(ReservationService.class.getName());
+
+    @EJB
+    ShardRouter shards;
+
+    @Resource
+    SessionContext context;
+
+    @Resource
+    TransactionSynchronizationRegistry transactions;
+
+    @EJB
+    ReservationStatistics statistics;
+
+    @EJB
+    AvailabilityCache availability;
+
+    @EJB
+    ReservationEventLog events;
+
+    /**
+     * Picks a free car for every quote, bumps the version of each chosen car
+     * in company/car id order and persists the reservations, which are
+     * returned in the order of the quotes. A car booked concurrently by
+     * another transaction makes this method fail with an
+     * {@link javax.persistence.OptimisticLockException}, a statistics row
+     * created concurrently with a duplicate key.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<Reservation> confirm(List<Quote> quotes) throws ReservationException {
+        // quotes are confirmed in company/car type order, by their position in the list
+        final List<Quote> byPosition = new ArrayList<Quote>(quotes);
+        List<Integer> ordered = new ArrayList<Integer>(byPosition.size());
+        for (int i = 0; i < byPosition.size(); i++) {
+            ordered.add(i);
+        }
+        Collections.sort(ordered, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                Quote q1 = byPosition.get(i1);
+                Quote q2 = byPosition.get(i2);
+                int result = q1.getRentalCompany().compareTo(q2.getRentalCompany());
+                if (result == 0) {
+                    result = q1.getCarType().compareTo(q2.getCarType());
+                }
+                return result;
+            }
+        });
+
+        // each company and car type loads its reservations once, around the periods of all its quotes
+        Map<List<String>, int[]> windows = new LinkedHashMap<List<String>, int[]>();
+        int firstOpenDay = ReservationArchiver.firstOpenDay();
+        for (int i : ordered) {
+            Quote quote = byPosition.get(i);
+            if (quote.getStartDay() < firstOpenDay) {
+                throw new ReservationException("Reservations starting before " + EpochDays.toDate(firstOpenDay)
+                        + " can no longer be made");
+            }
+            List<String> key = Arrays.asList(quote.getRentalCompany(), quote.getCarType());
+            int[] window = windows.get(key);
+            if (window == null) {
+                windows.put(key, new int[]{quote.getStartDay(), quote.getEndDay()});
+            } else {
+                window[0] = Math.min(window[0], quote.getStartDay());
+                window[1] = Math.max(window[1], quote.getEndDay());
+            }
+        }
+
+        Reservation[] confirmed = new Reservation[byPosition.size()];
+        try {
+            for (Map.Entry<List<String>, int[]> window : windows.entrySet()) {
+                String name = window.getKey().get(0);
+                EntityManager em = shards.forCompany(name);
+                CarRentalCompany company = ReservationWindows.findFleet(em, name);
+                if (company == null) {
+                    throw new ReservationException("No rental company " + name);
+                }
+                ReservationWindows.load(em, company, window.getKey().get(1),
+                        window.getValue()[0] - ReservationWindows.HORIZON_DAYS,
+                        window.getValue()[1] + ReservationWindows.HORIZON_DAYS);
+            }
+            for (int i : ordered) {
+                Quote quote = byPosition.get(i);
+                EntityManager em = shards.forCompany(quote.getRentalCompany());
+                confirmed[i] = em.find(CarRentalCompany.class, quote.getRentalCompany()).confirmQuote(quote);
+            }
+        } catch (ReservationException e) {
+            logger.log(Level.INFO, "Rolling back confirmation of {0} quotes: {1}", new Object[]{quotes.size(), e.getMessage()});
+            context.setRollbackOnly();
+            throw e;
+        }
+
+        List<Reservation> done = new ArrayList<Reservation>(Arrays.asList(confirmed));
+        List<Reservation> byCar = new ArrayList<Reservation>(done);
+        Collections.sort(byCar, new Comparator<Reservation>() {
+            @Override
+            public int compare(Reservation r1, Reservation r2) {
+                int result = r1.getRentalCompany().compareTo(r2.getRentalCompany());
+                if (result == 0) {
+                    result = Integer.compare(r1.getCarId(), r2.getCarId());
+                }
+                return result;
+            }
+        });
+        for (Reservation res : byCar) {
+            EntityManager em = shards.forCompany(res.getRentalCompany());
+            Car car = em.find(CarRentalCompany.class, res.getRentalCompany()).getCar(res.getCarId());
+            em.lock(car, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+            em.flush();
+        }
+
+        for (Reservation res : done) {
+            shards.forCompany(res.getRentalCompany()).persist(res);
+            statistics.recordConfirmed(res);
+        }
+        publishOnCommit(done, true);
+        return done;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public void cancel(int reservationId) throws ReservationException {
+        EntityManager em = shards.forId(reservationId);
+        Reservation res = em == null ? null : em.find(Reservation.class, reservationId);
+        if (res == null) {
+            throw new ReservationException("No reservation with id " + reservationId);
+        }
+        em.find(CarRentalCompany.class, res.getRentalCompany()).cancelReservation(res);
+        em.remove(res);
+        statistics.recordCancelled(res);
+        publishOnCommit(Collections.singletonList(res), false);
+    }
+
+    // invalidates the cached availabilities and appends the events once the changes are visible to readers
+    private void publishOnCommit(final List<Reservation> changed, final boolean confirmed) {
+        transactions.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {}
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    List<ReservationEvent> committed = new ArrayList<ReservationEvent>(changed.size());
+                    for (Reservation res : changed) {
+                        availability.invalidate(res.getRentalCompany(), res.getCarType(), res.getStartDay(), res.getEndDay());
+                        committed.add(confirmed ? ReservationEvent.confirmed(res) : ReservationEvent.cancelled(res));
+                    }
+                    events.append(committed);
+                }
+            }
+        });
+    }
+}
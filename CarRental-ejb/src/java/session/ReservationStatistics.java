@@ -0,0 +1,134 @@
+package session;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import rental.CarTypeStatistics;
+import rental.EpochDays;
+import rental.RenterStatistics;
+import rental.Reservation;
+
+/**
+ * Maintains the reservation counts read by the manager reports. The counts are
+ * updated in the transaction that confirms or cancels the reservation, so they
+ * commit or roll back together with it. The counts of a reservation are kept
+ * in the shard of its company, so a renter may have counts in several shards.
+ *
+ * A count is created by the first reservation it covers. Two such
+ * reservations confirmed concurrently both create it, and the one committing
+ * last fails on the primary key; CarRentalSession retries it like a car booked
+ * concurrently, and the retry increments the committed row.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.MANDATORY)
+public class ReservationStatistics {
+
+    private static final Logger logger = Logger.getLogger(ReservationStatistics.class.getName());
+
+    @EJB
+    ShardRouter shards;
+
+    public void recordConfirmed(Reservation res) {
+        record(res, 1);
+    }
+
+    public void recordCancelled(Reservation res) {
+        record(res, -1);
+    }
+
+    private void record(Reservation res, int delta) {
+        EntityManager em = shards.forCompany(res.getRentalCompany());
+        int updated = em.createNamedQuery("incrementRenterStatistics")
+                .setParameter("deltaInput", delta)
+                .setParameter("carRenterInput", res.getCarRenter())
+                .executeUpdate();
+        if (updated == 0) {
+            em.persist(new RenterStatistics(res.getCarRenter(), delta));
+        }
+
+        int year = EpochDays.yearOf(res.getStartDay());
+        updated = em.createNamedQuery("incrementCarTypeStatistics")
+                .setParameter("deltaInput", delta)
+                .setParameter("rentalCompanyInput", res.getRentalCompany())
+                .setParameter("carTypeInput", res.getCarType())
+                .setParameter("yearInput", year)
+                .executeUpdate();
+        if (updated == 0) {
+            em.persist(new CarTypeStatistics(res.getRentalCompany(), res.getCarType(), year, delta));
+        }
+    }
+
+    /**
+     * Recomputes all counts from the reservations, archived ones included,
+     * and replaces the stored ones.
+     *
+     * @return the number of stored counts that differed from the recomputed ones
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public int rebuild() {
+        int differences = 0;
+        for (EntityManager em : shards.all()) {
+            differences += rebuild(em);
+        }
+        logger.log(Level.INFO, "Rebuilt reservation statistics, {0} counts were out of date", differences);
+        return differences;
+    }
+
+    private int rebuild(EntityManager em) {
+        Map<String, Integer> renters = new HashMap<String, Integer>();
+        for (Object[] row : (List<Object[]>) em.createNamedQuery("countReservationsPerRenter").getResultList()) {
+            add(renters, (String) row[0], (Long) row[1]);
+        }
+        for (Object[] row : (List<Object[]>) em.createNamedQuery("countArchivedReservationsPerRenter").getResultList()) {
+            add(renters, (String) row[0], (Long) row[1]);
+        }
+        Map<CarTypeStatistics.Key, Integer> carTypes = new HashMap<CarTypeStatistics.Key, Integer>();
+        // live reservation years are not stored, so the days are summed up per year here
+        for (Object[] row : (List<Object[]>) em.createNamedQuery("countReservationsPerCarTypeAndDay").getResultList()) {
+            add(carTypes, new CarTypeStatistics.Key((String) row[0], (String) row[1], EpochDays.yearOf((Integer) row[2])), (Long) row[3]);
+        }
+        for (Object[] row : (List<Object[]>) em.createNamedQuery("countArchivedReservationsPerCarTypeAndYear").getResultList()) {
+            add(carTypes, new CarTypeStatistics.Key((String) row[0], (String) row[1], (Integer) row[2]), (Long) row[3]);
+        }
+
+        int differences = renters.size() + carTypes.size();
+        for (RenterStatistics stored : (List<RenterStatistics>) em.createNamedQuery("getAllRenterStatistics").getResultList()) {
+            differences += compare(stored.getReservations(), renters.get(stored.getRenter()));
+            em.remove(stored);
+        }
+        for (CarTypeStatistics stored : (List<CarTypeStatistics>) em.createNamedQuery("getAllCarTypeStatistics").getResultList()) {
+            differences += compare(stored.getReservations(), carTypes.get(stored.getKey()));
+            em.remove(stored);
+        }
+        em.flush();
+
+        for (Map.Entry<String, Integer> renter : renters.entrySet()) {
+            em.persist(new RenterStatistics(renter.getKey(), renter.getValue()));
+        }
+        for (Map.Entry<CarTypeStatistics.Key, Integer> carType : carTypes.entrySet()) {
+            CarTypeStatistics.Key key = carType.getKey();
+            em.persist(new CarTypeStatistics(key.getCompany(), key.getCarType(), key.getYear(), carType.getValue()));
+        }
+        return differences;
+    }
+
+    private static <K> void add(Map<K, Integer> counts, K key, Long delta) {
+        Integer count = counts.get(key);
+        counts.put(key, (count == null ? 0 : count) + delta.intValue());
+    }
+
+    // every recomputed count was counted as a difference up front, undone here if the stored one matches
+    private static int compare(int stored, Integer recomputed) {
+        if (recomputed == null) {
+            return stored == 0 ? 0 : 1;
+        }
+        return recomputed == stored ? -1 : 0;
+    }
+}
@@ -0,0 +1,51 @@
+package session;
+
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManager;
+import rental.CarRentalCompany;
+import rental.Reservation;
+
+/**
+ * Loads companies with their fleet and the reservations of a window of days,
+ * so the domain checks availability without loading the full history of
+ * every car.
+ */
+final class ReservationWindows {
+
+    /**
+     * Days around a booked period whose reservations are loaded as well, so
+     * the allocation strategy sees the neighbours of the period
+     * (-Drental.reservationWindow.horizonDays, default 60).
+     */
+    static final int HORIZON_DAYS = Integer.getInteger("rental.reservationWindow.horizonDays", 60);
+
+    private ReservationWindows() {}
+
+    /**
+     * The company with its cars and their types, or null.
+     */
+    static CarRentalCompany findFleet(EntityManager em, String company) {
+        return em.find(CarRentalCompany.class, company, Collections.<String, Object>singletonMap(
+                "javax.persistence.loadgraph", em.getEntityGraph("CarRentalCompany.fleet")));
+    }
+
+    static void load(EntityManager em, CarRentalCompany company, String carType, int from, int until) {
+        List<Reservation> overlapping = em.createNamedQuery("getReservationsOfCarTypeInWindow", Reservation.class)
+                .setParameter("rentalCompanyInput", company.getName())
+                .setParameter("carTypeInput", carType)
+                .setParameter("fromInput", from)
+                .setParameter("untilInput", until)
+                .getResultList();
+        company.loadReservations(carType, from, until, overlapping);
+    }
+
+    static void load(EntityManager em, CarRentalCompany company, int from, int until) {
+        List<Reservation> overlapping = em.createNamedQuery("getReservationsInWindow", Reservation.class)
+                .setParameter("rentalCompanyInput", company.getName())
+                .setParameter("fromInput", from)
+                .setParameter("untilInput", until)
+                .getResultList();
+        company.loadReservations(from, until, overlapping);
+    }
+}
@@ -0,0 +1,14 @@
+package session;
+
+/**
+ * Management operations on the session bean metrics.
+ */
+public interface SessionMetricsMXBean {
+
+    /**
+     * Writes the metrics of every method to the server log.
+     */
+    void dumpToLog();
+
+    void reset();
+}
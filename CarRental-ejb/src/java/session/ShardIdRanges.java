@@ -0,0 +1,32 @@
+package session;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.sequencing.Sequence;
+import org.eclipse.persistence.sessions.DatasourceLogin;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * Starts the id sequences of every shard in a range of its own, so car,
+ * car type and reservation ids stay unique over all shards. Registered with
+ * the eclipselink.session.customizer property, next to a rental.shard
+ * property with the number of the shard.
+ *
+ * The initial values only take effect when the sequence table is created,
+ * which the drop-and-create schema generation does on every deployment.
+ */
+public class ShardIdRanges implements SessionCustomizer {
+
+    // ids of shard n start at n * RANGE + 1
+    static final int RANGE = 1 << 28;
+
+    @Override
+    public void customize(Session session) throws Exception {
+        Object shard = session.getProperty("rental.shard");
+        int offset = shard == null ? 0 : Integer.parseInt(shard.toString()) * RANGE;
+        DatasourceLogin login = (DatasourceLogin) session.getDatasourceLogin();
+        login.getDefaultSequence().setInitialValue(offset + 1);
+        for (Object sequence : login.getSequences().values()) {
+            ((Sequence) sequence).setInitialValue(offset + 1);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContexts;
+
+/**
+ * Routes the data of a rental company to the persistence unit of its shard.
+ * A company, its fleet, its reservations and the statistics counting them
+ * all live in one shard, picked by hashing the company name; queries over
+ * several companies fan out over the shards and merge the results.
+ *
+ * The number of shards is set with -Drental.shards (default 1, at most
+ * {@link #MAX_SHARDS}). Shard 0 is the CarRental-ejbPU2 unit, shard n the
+ * CarRental-shardn unit. The entity managers are transaction scoped, so the
+ * shards touched by one transaction commit or roll back together.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+@PersistenceContexts({
+    @PersistenceContext(name = "persistence/shard0", unitName = "CarRental-ejbPU2"),
+    @PersistenceContext(name = "persistence/shard1", unitName = "CarRental-shard1"),
+    @PersistenceContext(name = "persistence/shard2", unitName = "CarRental-shard2"),
+    @PersistenceContext(name = "persistence/shard3", unitName = "CarRental-shard3")
+})
+public class ShardRouter {
+
+    private static final Logger logger = Logger.getLogger(ShardRouter.class.getName());
+
+    static final int MAX_SHARDS = 4;
+
+    private static final int SHARDS = Integer.getInteger("rental.shards", 1);
+
+    @Resource
+    SessionContext context;
+
+    private List<EntityManager> shards;
+
+    @PostConstruct
+    void start() {
+        if (SHARDS < 1 || SHARDS > MAX_SHARDS) {
+            throw new IllegalStateException("rental.shards must be between 1 and " + MAX_SHARDS + ", not " + SHARDS);
+        }
+        EntityManager[] managers = new EntityManager[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            managers[i] = (EntityManager) context.lookup("persistence/shard" + i);
+        }
+        shards = Collections.unmodifiableList(Arrays.asList(managers));
+        logger.log(Level.INFO, "Rental companies are spread over {0} shard(s)", SHARDS);
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    public int shardOf(String company) {
+        return Math.floorMod(company.hashCode(), shards.size());
+    }
+
+    public EntityManager forCompany(String company) {
+        return shards.get(shardOf(company));
+    }
+
+    /**
+     * The entity manager of the shard that generated the id of an entity,
+     * or null if the id lies outside the ranges of the shards.
+     *
+     * @see ShardIdRanges
+     */
+    public EntityManager forId(int id) {
+        int shard = (id - 1) / ShardIdRanges.RANGE;
+        return id > 0 && shard < shards.size() ? shards.get(shard) : null;
+    }
+
+    /**
+     * The entity managers of all shards, shard 0 first.
+     */
+    public List<EntityManager> all() {
+        return shards;
+    }
+
+    /**
+     * The given companies grouped by the entity manager of their shard, in
+     * shard order. Shards without any of the companies are left out.
+     */
+    public Map<EntityManager, List<String>> byShard(Collection<String> companies) {
+        List<List<String>> grouped = new ArrayList<List<String>>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            grouped.add(new ArrayList<String>());
+        }
+        for (String company : companies) {
+            grouped.get(shardOf(company)).add(company);
+        }
+        Map<EntityManager, List<String>> result = new LinkedHashMap<EntityManager, List<String>>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (!grouped.get(i).isEmpty()) {
+                result.put(shards.get(i), grouped.get(i));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,49 @@
+package rental;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of one item of a batch call: either a value or the reason the item
+ * failed. A failing item does not fail the other items of the batch.
+ */
+public class BatchResult<T extends Serializable> implements Serializable {
+
+    private final T value;
+    private final ReservationException failure;
+
+    private BatchResult(T value, ReservationException failure) {
+        this.value = value;
+        this.failure = failure;
+    }
+
+    public static <T extends Serializable> BatchResult<T> success(T value) {
+        return new BatchResult<T>(value, null);
+    }
+
+    public static <T extends Serializable> BatchResult<T> failure(ReservationException failure) {
+        return new BatchResult<T>(null, failure);
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * The value of a successful item, or the failure of a failed one.
+     */
+    public T get() throws ReservationException {
+        if (failure != null) {
+            throw failure;
+        }
+        return value;
+    }
+
+    public ReservationException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return failure == null ? String.valueOf(value) : "Failed: " + failure.getMessage();
+    }
+}
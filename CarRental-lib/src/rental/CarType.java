@@ -1,16 +1,26 @@
 package rental;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.TableGenerator;
 
+// read-mostly, so kept in the shared cache (see shared-cache-mode in persistence.xml)
 @Entity
-public class CarType implements Serializable{
+@Cacheable
+public class CarType implements Externalizable {
+    
+    private static final byte FORMAT_VERSION = 1;
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "CarTypeIds")
+    @TableGenerator(name = "CarTypeIds", allocationSize = 50)
     private int id;
     
     private String name;
@@ -34,6 +44,10 @@ public class CarType implements Serializable{
         this.smokingAllowed = smokingAllowed;
     }
 
+    public int getId() {
+        return id;
+    }
+
     public String getName() {
     	return name;
     }
@@ -54,6 +68,32 @@ public class CarType implements Serializable{
     	return trunkSpace;
     }
     
+    /*****************
+     * SERIALIZATION *
+     *****************/
+    
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        WireFormat.writeVarInt(out, id);
+        WireFormat.writeVarInt(out, nbOfSeats);
+        out.writeBoolean(smokingAllowed);
+        out.writeDouble(rentalPricePerDay);
+        out.writeFloat(trunkSpace);
+        WireFormat.writeString(out, name);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        WireFormat.checkVersion(CarType.class, in.readByte(), FORMAT_VERSION);
+        id = WireFormat.readVarInt(in);
+        nbOfSeats = WireFormat.readVarInt(in);
+        smokingAllowed = in.readBoolean();
+        rentalPricePerDay = in.readDouble();
+        trunkSpace = in.readFloat();
+        name = WireFormat.readString(in);
+    }
+    
     /*************
      * TO STRING *
      *************/
@@ -0,0 +1,48 @@
+package rental;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Conversion between calendar dates and day numbers counted from 1/1/1970.
+ * Dates are interpreted in the default time zone, like the dates parsed by
+ * the clients, so a date at local midnight maps onto exactly one day.
+ */
+public final class EpochDays {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private EpochDays() {}
+
+    public static int of(Date date) {
+        long time = date.getTime();
+        long local = time + TimeZone.getDefault().getOffset(time);
+        return (int) Math.floorDiv(local, MILLIS_PER_DAY);
+    }
+
+    public static Date toDate(int day) {
+        Calendar utc = utcCalendar(day);
+        Calendar local = Calendar.getInstance();
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        return local.getTime();
+    }
+
+    public static int yearOf(int day) {
+        return utcCalendar(day).get(Calendar.YEAR);
+    }
+
+    /**
+     * Month of the day, from 0 for January to 11 for December.
+     */
+    public static int monthOf(int day) {
+        return utcCalendar(day).get(Calendar.MONTH);
+    }
+
+    private static Calendar utcCalendar(int day) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(day * MILLIS_PER_DAY);
+        return utc;
+    }
+}
@@ -0,0 +1,55 @@
+package rental;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A rental period from a start date until an end date.
+ */
+public class Period implements Serializable {
+
+    // epoch days, see EpochDays
+    private final int startDay;
+    private final int endDay;
+
+    public Period(Date start, Date end) {
+        this.startDay = EpochDays.of(start);
+        this.endDay = EpochDays.of(end);
+    }
+
+    public Date getStartDate() {
+        return EpochDays.toDate(startDay);
+    }
+
+    public Date getEndDate() {
+        return EpochDays.toDate(endDay);
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    public int getEndDay() {
+        return endDay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Period [from %s until %s]", getStartDate(), getEndDate());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * startDay + endDay;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Period other = (Period) obj;
+        return startDay == other.startDay && endDay == other.endDay;
+    }
+}
@@ -1,18 +1,20 @@
 package rental;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Date;
 import javax.persistence.MappedSuperclass;
-import javax.persistence.Temporal;
-import javax.persistence.TemporalType;
 
 @MappedSuperclass
-public class Quote implements Serializable {
+public class Quote implements Externalizable {
 
-    @Temporal(TemporalType.DATE)
-    private Date startDate;
-    @Temporal(TemporalType.DATE)
-    private Date endDate;
+    private static final byte FORMAT_VERSION = 1;
+
+    // epoch days, see EpochDays
+    private int startDay;
+    private int endDay;
     private String carRenter;
     private String rentalCompany;
     private String carType;
@@ -27,20 +29,32 @@ public class Quote implements Serializable {
     }
     
     public Quote(String carRenter, Date start, Date end, String rentalCompany, String carType, double rentalPrice) {
+        this(carRenter, EpochDays.of(start), EpochDays.of(end), rentalCompany, carType, rentalPrice);
+    }
+    
+    public Quote(String carRenter, int startDay, int endDay, String rentalCompany, String carType, double rentalPrice) {
         this.carRenter = carRenter;
-        this.startDate = start;
-        this.endDate = end;
+        this.startDay = startDay;
+        this.endDay = endDay;
         this.rentalCompany = rentalCompany;
         this.carType = carType;
         this.rentalPrice = rentalPrice;
     }
 
     public Date getStartDate() {
-        return startDate;
+        return EpochDays.toDate(startDay);
     }
 
     public Date getEndDate() {
-        return endDate;
+        return EpochDays.toDate(endDay);
+    }
+    
+    public int getStartDay() {
+        return startDay;
+    }
+    
+    public int getEndDay() {
+        return endDay;
     }
 
     public String getCarRenter() {
@@ -59,6 +73,32 @@ public class Quote implements Serializable {
 	return carType;
     }
     
+    /*****************
+     * SERIALIZATION *
+     *****************/
+    
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        WireFormat.writeVarInt(out, startDay);
+        WireFormat.writeVarInt(out, endDay - startDay);
+        out.writeDouble(rentalPrice);
+        WireFormat.writeString(out, carRenter);
+        WireFormat.writeString(out, rentalCompany);
+        WireFormat.writeString(out, carType);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        WireFormat.checkVersion(Quote.class, in.readByte(), FORMAT_VERSION);
+        startDay = WireFormat.readVarInt(in);
+        endDay = startDay + WireFormat.readVarInt(in);
+        rentalPrice = in.readDouble();
+        carRenter = WireFormat.readString(in);
+        rentalCompany = WireFormat.readString(in);
+        carType = WireFormat.readString(in);
+    }
+    
     /*************
      * TO STRING *
      *************/
@@ -75,12 +115,12 @@ public class Quote implements Serializable {
 	int result = 1;
 	result = prime * result + ((carRenter == null) ? 0 : carRenter.hashCode());
 	result = prime * result + ((carType == null) ? 0 : carType.hashCode());
-	result = prime * result + ((endDate == null) ? 0 : endDate.hashCode());
+	result = prime * result + endDay;
 	result = prime * result + ((rentalCompany == null) ? 0 : rentalCompany.hashCode());
 	long temp;
 	temp = Double.doubleToLongBits(rentalPrice);
 	result = prime * result + (int) (temp ^ (temp >>> 32));
-	result = prime * result + ((startDate == null) ? 0 : startDate.hashCode());
+	result = prime * result + startDay;
 	return result;
     }
 
@@ -103,10 +143,7 @@ public class Quote implements Serializable {
 		return false;
 	} else if (!carType.equals(other.carType))
             return false;
-	if (endDate == null) {
-            if (other.endDate != null)
-		return false;
-	} else if (!endDate.equals(other.endDate))
+	if (endDay != other.endDay)
             return false;
 	if (rentalCompany == null) {
             if (other.rentalCompany != null)
@@ -115,10 +152,7 @@ public class Quote implements Serializable {
             return false;
 	if (Double.doubleToLongBits(rentalPrice) != Double.doubleToLongBits(other.rentalPrice))
             return false;
-	if (startDate == null) {
-            if (other.startDate != null)
-		return false;
-	} else if (!startDate.equals(other.startDate))
+	if (startDay != other.startDay)
             return false;
 	return true;
     }
@@ -1,5 +1,8 @@
 package rental;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -8,6 +11,8 @@ import javax.persistence.Id;
 @Entity
 public class Reservation extends Quote {
 
+    private static final byte FORMAT_VERSION = 1;
+
     @Id @GeneratedValue(strategy = GenerationType.AUTO)
     private int reservationId;
     
@@ -22,19 +27,52 @@ public class Reservation extends Quote {
     }
     
     public Reservation(Quote quote, int carId) {
-    	super(quote.getCarRenter(), quote.getStartDate(), quote.getEndDate(), 
+    	super(quote.getCarRenter(), quote.getStartDay(), quote.getEndDay(), 
     		quote.getRentalCompany(), quote.getCarType(), quote.getRentalPrice());
         this.carId = carId;
     }
     
+    /**
+     * Restores a reservation that was moved out of the reservations table,
+     * such as an archived one.
+     */
+    public Reservation(int reservationId, Quote quote, int carId) {
+        this(quote, carId);
+        this.reservationId = reservationId;
+    }
+    
     /******
      * ID *
      ******/
     
+    public int getReservationId() {
+        return reservationId;
+    }
+    
     public int getCarId() {
     	return carId;
     }
     
+    /*****************
+     * SERIALIZATION *
+     *****************/
+    
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeByte(FORMAT_VERSION);
+        WireFormat.writeVarInt(out, reservationId);
+        WireFormat.writeVarInt(out, carId);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        super.readExternal(in);
+        WireFormat.checkVersion(Reservation.class, in.readByte(), FORMAT_VERSION);
+        reservationId = WireFormat.readVarInt(in);
+        carId = WireFormat.readVarInt(in);
+    }
+    
     /*************
      * TO STRING *
      *************/
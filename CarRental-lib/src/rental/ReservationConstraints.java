@@ -3,10 +3,11 @@ package rental;
 import java.io.Serializable;
 import java.util.Date;
 
-public class ReservationConstraints{
+public class ReservationConstraints implements Serializable {
     
-    private Date startDate;
-    private Date endDate;
+    // epoch days, see EpochDays
+    private int startDay;
+    private int endDay;
     private String carType;
     private String region;
 	
@@ -18,11 +19,15 @@ public class ReservationConstraints{
     }
     
     public Date getStartDate() {
-		return startDate;
+		return EpochDays.toDate(startDay);
+	}
+    
+    public int getStartDay() {
+		return startDay;
 	}
     
     private void setStartDate(Date startDate) {
-		this.startDate = startDate;
+		this.startDay = EpochDays.of(startDate);
 	}
 
     public String getRegion() {
@@ -34,11 +39,15 @@ public class ReservationConstraints{
     }
     
     public Date getEndDate() {
-		return endDate;
+		return EpochDays.toDate(endDay);
+	}
+    
+    public int getEndDay() {
+		return endDay;
 	}
     
 	private void setEndDate(Date endDate) {
-		this.endDate = endDate;
+		this.endDay = EpochDays.of(endDate);
 	}
 	
 	public String getCarType() {
@@ -59,9 +68,8 @@ public class ReservationConstraints{
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((endDate == null) ? 0 : endDate.hashCode());
-		result = prime * result
-				+ ((startDate == null) ? 0 : startDate.hashCode());
+		result = prime * result + endDay;
+		result = prime * result + startDay;
 		result = prime * result + ((carType == null) ? 0 : carType.hashCode());
 		return result;
 	}
@@ -75,15 +83,9 @@ public class ReservationConstraints{
 		if (getClass() != obj.getClass())
 			return false;
 		ReservationConstraints other = (ReservationConstraints) obj;
-		if (endDate == null) {
-			if (other.endDate != null)
-				return false;
-		} else if (!endDate.equals(other.endDate))
+		if (endDay != other.endDay)
 			return false;
-		if (startDate == null) {
-			if (other.startDate != null)
-				return false;
-		} else if (!startDate.equals(other.startDate))
+		if (startDay != other.startDay)
 			return false;
 		if (carType == null) {
 			if (other.carType != null)
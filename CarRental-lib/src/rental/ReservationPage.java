@@ -0,0 +1,59 @@
+package rental;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of a reservation history, ordered by start date. The cursor of a
+ * page is passed to get the page after it; it is null on the last page.
+ */
+public class ReservationPage implements Serializable {
+
+    private final List<Reservation> reservations;
+    private final Cursor next;
+
+    public ReservationPage(List<Reservation> reservations, Cursor next) {
+        this.reservations = reservations;
+        this.next = next;
+    }
+
+    public List<Reservation> getReservations() {
+        return reservations;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    public Cursor getNextCursor() {
+        return next;
+    }
+
+    /**
+     * Position after the last reservation of a page. Reservations are ordered
+     * by start day and then by id, so pages stay stable while reservations are
+     * added or cancelled.
+     */
+    public static class Cursor implements Serializable {
+
+        private final int startDay;
+        private final int reservationId;
+
+        public Cursor(int startDay, int reservationId) {
+            this.startDay = startDay;
+            this.reservationId = reservationId;
+        }
+
+        public static Cursor after(Reservation reservation) {
+            return new Cursor(reservation.getStartDay(), reservation.getReservationId());
+        }
+
+        public int getStartDay() {
+            return startDay;
+        }
+
+        public int getReservationId() {
+            return reservationId;
+        }
+    }
+}
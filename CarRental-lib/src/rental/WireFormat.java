@@ -0,0 +1,88 @@
+package rental;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Helpers for the compact Externalizable encodings of the rental objects.
+ *
+ * Strings that recur across the objects of a stream, like company and car
+ * type names, are written once per stream: equal strings are first replaced
+ * by one canonical instance, so the object stream writes a short back
+ * reference instead of every repetition. Small integers such as epoch days
+ * and ids are written as variable-length ints.
+ */
+final class WireFormat {
+
+    // bounds the canonical strings kept for arbitrary values like renter names
+    private static final int MAX_CANONICAL_STRINGS = 100000;
+
+    private static final ConcurrentMap<String, String> canonical = new ConcurrentHashMap<String, String>();
+
+    private WireFormat() {}
+
+    static void writeString(ObjectOutput out, String value) throws IOException {
+        out.writeObject(canonical(value));
+    }
+
+    static String readString(ObjectInput in) throws IOException {
+        try {
+            return (String) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Zig-zag encoded in groups of 7 bits, so values near zero take one byte
+     * and epoch days of this century three.
+     */
+    static void writeVarInt(ObjectOutput out, int value) throws IOException {
+        int zigZag = (value << 1) ^ (value >> 31);
+        while ((zigZag & ~0x7F) != 0) {
+            out.writeByte((zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+        out.writeByte(zigZag);
+    }
+
+    static int readVarInt(ObjectInput in) throws IOException {
+        int zigZag = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readByte();
+            zigZag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            if (shift == 28) {
+                throw new IOException("Malformed variable-length int");
+            }
+        }
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    static void checkVersion(Class<?> type, byte version, byte expected) throws IOException {
+        if (version != expected) {
+            throw new InvalidClassException(type.getName(), "Unknown format version " + version);
+        }
+    }
+
+    private static String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+        String found = canonical.get(value);
+        if (found != null) {
+            return found;
+        }
+        if (canonical.size() >= MAX_CANONICAL_STRINGS) {
+            return value;
+        }
+        found = canonical.putIfAbsent(value, value);
+        return found == null ? value : found;
+    }
+}
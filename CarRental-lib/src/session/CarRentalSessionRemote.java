@@ -4,11 +4,14 @@ import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import javax.ejb.Remote;
+import rental.BatchResult;
 import rental.CarType;
+import rental.Period;
 import rental.Quote;
 import rental.Reservation;
 import rental.ReservationConstraints;
 import rental.ReservationException;
+import rental.ReservationPage;
 
 @Remote
 public interface CarRentalSessionRemote {
@@ -19,6 +22,11 @@ public interface CarRentalSessionRemote {
     
     public List<CarType> getAvailableCarTypes(Date start, Date end);
     
+    /**
+     * The car types available in each of the periods, in the order of the periods.
+     */
+    public List<List<CarType>> getAvailableCarTypes(List<Period> periods);
+    
     public List<Quote> getCurrentQuotes();
     
     public List<Reservation> confirmQuotes() throws ReservationException;
@@ -27,6 +35,25 @@ public interface CarRentalSessionRemote {
 
     public void createQuote(String renter, Date start, Date end, String carType, String region) throws ReservationException;
 
+    public void createCheapestQuote(String renter, Date start, Date end, String carType, String region) throws ReservationException;
+
+    /**
+     * Creates a quote for each of the constraints, in one call. The result of
+     * an item is either its quote, which is added to the session, or the
+     * reason no quote could be made.
+     */
+    public List<BatchResult<Quote>> createQuotes(String renter, List<ReservationConstraints> constraints);
+
+    /**
+     * A page of the reservations of the renter whose name was set on this
+     * session, ordered by start date.
+     *
+     * @param after cursor of the previous page, or null for the first page
+     * @param pageSize maximum number of reservations in the page
+     * @throws IllegalStateException if the renter name was not set
+     */
+    public ReservationPage getReservationsBy(ReservationPage.Cursor after, int pageSize);
+
 
     
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import java.util.Set;
 import javax.ejb.Remote;
 import rental.CarType;
 import rental.Reservation;
+import rental.ReservationException;
+import rental.ReservationPage;
 
 @Remote
 public interface ManagerSessionRemote {
@@ -25,4 +27,39 @@ public interface ManagerSessionRemote {
     public int getNumberOfReservationsBy(String clientName);
 
     public int getNumberOfReservationsForCarType(String carRentalName, String carType);
+
+    /**
+     * A page of the reservations of the renter, ordered by start date.
+     *
+     * @param after cursor of the previous page, or null for the first page
+     * @param pageSize maximum number of reservations in the page
+     */
+    public ReservationPage getReservationsBy(String renter, ReservationPage.Cursor after, int pageSize);
+
+    /**
+     * A page of the reservations at the company, ordered by start date.
+     *
+     * @param after cursor of the previous page, or null for the first page
+     * @param pageSize maximum number of reservations in the page
+     */
+    public ReservationPage getReservationsAt(String company, ReservationPage.Cursor after, int pageSize);
+
+    public void cancelReservation(int reservationId) throws ReservationException;
+
+    /**
+     * Recomputes the reservation statistics behind the reports from the
+     * reservations themselves.
+     *
+     * @return the number of statistics that were out of date
+     */
+    public int rebuildStatistics();
+
+    /**
+     * Archives the reservations that ended before the archive cutoff now,
+     * rather than waiting for the nightly run. Does nothing unless the server
+     * sets a retention.
+     *
+     * @return the number of reservations archived
+     */
+    public int archiveReservations();
 }
\ No newline at end of file